@@ -0,0 +1,357 @@
+/**
+ * This class evaluates a while loop whose body is only accumulations,
+ * without walking its tree (see NodeWhile.hoist()).
+ * The loop's condition is "x relop y", and each assignment of its body
+ * is "v = v op x", where op is +, -, *, or /,
+ * and each x or y is a variable or a literal.
+ * The values of the variables are copied into an array when the loop
+ * is entered, and the loop is run on the array, by the same operations,
+ * on the same operands, and so to the same values, to the bit.
+ * Those written are stored back when it is done.
+ *
+ * A counting loop, "while i relop n", with one update, "i = i + c",
+ * whose other assignments are "s = s + x" or "s = s - x",
+ * where x is i, or isn't written by the loop,
+ * is evaluated in closed form, if every value is a whole number,
+ * and the trip count, and every value the loop would compute,
+ * can be bounded below 2^53 (see NodeFactInduction.exact()).
+ * Then every sum the loop would compute is exact,
+ * so the closed form, computed with longs, is the same, to the bit.
+ * A negative zero isn't accepted, since its sign may not survive.
+ *
+ * If a variable is undefined when the loop is entered,
+ * the loop is evaluated normally, to fail where it would,
+ * as it is if an update steps running products (see NodeAssnInduction),
+ * which a loop around this one may have reduced.
+ */
+
+import java.util.*;
+
+public class Accumulation {
+
+	private static final long LIMIT=1L<<53;
+
+	private static final int ADD=0;
+	private static final int SUB=1;
+	private static final int MUL=2;
+	private static final int DIV=3;
+
+	private final int pos;
+	private final int[] slots;		// the variables, first in values
+	private final boolean[] written;	// by the loop, for each variable
+	private final double[] values;	// the variables, then the literals
+	private final NodeRelop relop;
+	private final int left;			// the condition's operands, in values
+	private final int right;
+	private final int[] target;		// each assignment's variable, in values
+	private final int[] op;
+	private final int[] operand;	// and operand, in values
+	private final int update;		// the assignment that updates the counter, or -1
+	private final NodeAssnInduction[] inductions;	// updates among the assignments
+	private final int statements;	// executed by each iteration (see Metrics)
+	private double result=0.0;
+
+	private Accumulation(int pos, int[] slots, boolean[] written, double[] values,
+	                     NodeRelop relop, int left, int right,
+	                     int[] target, int[] op, int[] operand,
+	                     NodeAssnInduction[] inductions, int statements) {
+		this.pos=pos;
+		this.slots=slots;
+		this.written=written;
+		this.values=values;
+		this.relop=relop;
+		this.left=left;
+		this.right=right;
+		this.target=target;
+		this.op=op;
+		this.operand=operand;
+		this.inductions=inductions;
+		this.statements=statements;
+		this.update=update();
+	}
+
+	/**
+	 * Recognizes a loop whose body is only accumulations.
+	 * @param pos the loop's position
+	 * @param boolexpr the loop's condition
+	 * @param stmt the loop's body
+	 * @return the accumulation, or null if the loop isn't one
+	 */
+	public static Accumulation of(int pos, NodeBoolexpr boolexpr, NodeStmt stmt) {
+		List<NodeAssn> assns=new ArrayList<NodeAssn>();
+		if (!stmt.assignments(assns) || assns.isEmpty())
+			return null;
+		List<Integer> slots=new ArrayList<Integer>();
+		List<Double> literals=new ArrayList<Double>();
+		List<NodeAssnInduction> inductions=new ArrayList<NodeAssnInduction>();
+		// operands are slots, or -1-i for literal i, until they are indexed
+		int n=assns.size();
+		int[] target=new int[n];
+		int[] op=new int[n];
+		int[] operand=new int[n];
+		for (int k=0; k<n; k++) {
+			NodeAssn assn=assns.get(k);
+			if (assn instanceof NodeAssnInduction)
+				inductions.add((NodeAssnInduction)assn);
+			NodeExpr expr=assn.expr();
+			NodeFact v;
+			NodeFact x;
+			if (expr.size()==2 && expr.term(0).fact()!=null && expr.term(1).fact()!=null) {
+				v=expr.term(0).fact();
+				x=expr.term(1).fact();
+				op[k]=expr.addop(0) instanceof NodeAdd ? ADD : SUB;
+			} else if (expr.size()==1 && expr.term(0).size()==2) {
+				v=expr.term(0).fact(0);
+				x=expr.term(0).fact(1);
+				op[k]=expr.term(0).mulop(0) instanceof NodeMul ? MUL : DIV;
+			} else
+				return null;
+			if (!(v instanceof NodeFactId) || ((NodeFactId)v).slot()!=assn.slot())
+				return null;
+			target[k]=assn.slot();
+			Integer o=operand(x,literals);
+			if (o==null)
+				return null;
+			operand[k]=o;
+		}
+		Integer left=operand(boolexpr.expr1().fact(),literals);
+		Integer right=operand(boolexpr.expr2().fact(),literals);
+		if (left==null || right==null)
+			return null;
+		for (int k=0; k<n; k++) {
+			target[k]=index(target[k],slots,literals);
+			operand[k]=index(operand[k],slots,literals);
+		}
+		left=index(left,slots,literals);
+		right=index(right,slots,literals);
+		int[] s=new int[slots.size()];
+		boolean[] written=new boolean[s.length];
+		double[] values=new double[s.length+literals.size()];
+		for (int i=0; i<s.length; i++)
+			s[i]=slots.get(i);
+		for (int k=0; k<n; k++)
+			written[target[k]]=true;
+		for (int i=0; i<literals.size(); i++)
+			values[s.length+i]=literals.get(i);
+		// literals are placed after the variables, now that they are all known
+		for (int k=0; k<n; k++)
+			operand[k]=literal(operand[k],s.length);
+		return new Accumulation(pos,s,written,values,boolexpr.relop(),
+		                        literal(left,s.length),literal(right,s.length),
+		                        target,op,operand,
+		                        inductions.toArray(new NodeAssnInduction[0]),
+		                        stmt.statements());
+	}
+
+	/**
+	 * Gets an operand, as a slot, or a literal's code.
+	 * @param fact the operand, or null
+	 * @param literals the literals, which a literal is added to
+	 * @return the operand, or null if it is neither a variable nor a literal
+	 */
+	private static Integer operand(NodeFact fact, List<Double> literals) {
+		if (fact instanceof NodeFactId)
+			return ((NodeFactId)fact).slot();
+		if (fact instanceof NodeFactNum) {
+			literals.add(((NodeFactNum)fact).value());
+			return -literals.size();
+		}
+		return null;
+	}
+
+	/**
+	 * Indexes an operand: a slot by its variable, and a literal's code as it is.
+	 * @param o the operand
+	 * @param slots the variables, which a new one is added to
+	 * @param literals the literals
+	 * @return the variable's index, or the literal's code
+	 */
+	private static int index(int o, List<Integer> slots, List<Double> literals) {
+		if (o<0)
+			return o;
+		int i=slots.indexOf(o);
+		if (i<0) {
+			slots.add(o);
+			i=slots.size()-1;
+		}
+		return i;
+	}
+
+	private static int literal(int o, int variables) {
+		return o<0 ? variables-1-o : o;
+	}
+
+	/**
+	 * Finds the update of a counting loop, which can be evaluated in closed form.
+	 * @return the update's index, or -1 if the loop isn't a counting loop
+	 */
+	private int update() {
+		if (!(relop instanceof NodeLt || relop instanceof NodeLe
+		      || relop instanceof NodeGt || relop instanceof NodeGe)
+		    || left>=slots.length || !written[left] || isWritten(right))
+			return -1;
+		int u=-1;
+		Set<Integer> targets=new HashSet<Integer>();
+		for (int k=0; k<target.length; k++) {
+			if (op[k]!=ADD && op[k]!=SUB || !targets.add(target[k]))
+				return -1;
+			if (target[k]==left) {
+				if (isWritten(operand[k]))
+					return -1;
+				u=k;
+			} else if (operand[k]!=left && isWritten(operand[k]))
+				return -1;
+		}
+		return u;
+	}
+
+	private boolean isWritten(int i) {
+		return i<slots.length && written[i];
+	}
+
+	/**
+	 * Evaluates the loop, if its variables are defined,
+	 * and no update steps running products.
+	 * @param env the environment containing variable values
+	 * @return false if the loop must be evaluated normally
+	 */
+	public boolean run(Environment env) {
+		for (NodeAssnInduction u: inductions)
+			if (u.stepping())
+				return false;
+		double[] v=values.clone();
+		try {
+			for (int i=0; i<slots.length; i++)
+				v[i]=env.get(pos,slots[i]);
+		} catch (EvalException e) {
+			return false;
+		}
+		long n=closed(v);
+		if (n<0)
+			n=iterate(v);
+		// the statements the loop would have executed
+		if (Metrics.STATEMENTS)
+			env.executed(n*statements);
+		if (n==0) {
+			result=0.0;
+			return true;
+		}
+		for (int i=0; i<slots.length; i++)
+			if (written[i])
+				env.put(slots[i],v[i]);
+		result=v[target[target.length-1]];
+		return true;
+	}
+
+	/**
+	 * Gets the value of the last assignment the loop evaluated,
+	 * as of the last run().
+	 * @return the value, or 0.0 if the loop didn't iterate
+	 */
+	public double result() {
+		return result;
+	}
+
+	/**
+	 * Runs the loop on the values.
+	 * @param v the values, which are updated
+	 * @return the number of iterations
+	 */
+	private long iterate(double[] v) {
+		long n=0;
+		while (relop.op(v[left],v[right])!=0.0) {
+			for (int k=0; k<target.length; k++) {
+				int t=target[k];
+				double x=v[operand[k]];
+				switch (op[k]) {
+					case ADD: v[t]=v[t]+x; break;
+					case SUB: v[t]=v[t]-x; break;
+					case MUL: v[t]=v[t]*x; break;
+					default:  v[t]=v[t]/x; break;
+				}
+			}
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Evaluates a counting loop in closed form, if it can be done exactly.
+	 * @param v the values, which are updated if it can
+	 * @return the number of iterations, or -1 if it can't
+	 */
+	private long closed(double[] v) {
+		if (update<0)
+			return -1;
+		double i0=v[left];
+		double c=op[update]==ADD ? v[operand[update]] : -v[operand[update]];
+		double b=v[right];
+		if (!exact(i0) || !exact(c) || !exact(b) || c==0)
+			return -1;
+		long a=(long)i0;
+		long step=(long)c;
+		long bound=(long)b;
+		long n;
+		if (relop.op(i0,b)==0.0)
+			return 0;
+		else if (step>0 && relop instanceof NodeLt)
+			n=(bound-a+step-1)/step;
+		else if (step>0 && relop instanceof NodeLe)
+			n=(bound-a)/step+1;
+		else if (step<0 && relop instanceof NodeGt)
+			n=(a-bound-step-1)/-step;
+		else if (step<0 && relop instanceof NodeGe)
+			n=(a-bound)/-step+1;
+		else
+			return -1;	// it counts away from the bound
+		long[] sums=new long[target.length];
+		try {
+			long end=Math.addExact(a,Math.multiplyExact(n,step));
+			if (Math.abs(end)>=LIMIT)
+				return -1;
+			for (int k=0; k<target.length; k++) {
+				if (k==update)
+					continue;
+				double s0=v[target[k]];
+				if (!exact(s0))
+					return -1;
+				long max;
+				long total;
+				if (operand[k]==left) {
+					// the counter, before or after its update
+					long first=k<update ? a : a+step;
+					long last=first+(n-1)*step;
+					max=Math.max(Math.abs(first),Math.abs(last));
+					if (Math.addExact(Math.abs((long)s0),Math.multiplyExact(n,max))>=LIMIT)
+						return -1;
+					total=Math.addExact(Math.multiplyExact(n,first),
+					                    Math.multiplyExact(step,Math.multiplyExact(n,n-1)/2));
+				} else {
+					double x=v[operand[k]];
+					if (!exact(x))
+						return -1;
+					max=Math.abs((long)x);
+					if (Math.addExact(Math.abs((long)s0),Math.multiplyExact(n,max))>=LIMIT)
+						return -1;
+					total=n*(long)x;
+				}
+				sums[k]=op[k]==ADD ? (long)s0+total : (long)s0-total;
+			}
+			for (int k=0; k<target.length; k++)
+				v[target[k]]=k==update ? end : sums[k];
+		} catch (ArithmeticException e) {
+			return -1;
+		}
+		return n;
+	}
+
+	/**
+	 * Checks whether a value is a whole number, less than 2^53, but not -0.
+	 * @param d the value
+	 * @return true if it is
+	 */
+	private static boolean exact(double d) {
+		return NodeFactInduction.exact(d) && Double.doubleToRawLongBits(d)!=Long.MIN_VALUE;
+	}
+
+}
@@ -0,0 +1,384 @@
+/**
+ * This class is an on-disk cache of parsed and folded programs,
+ * so that a program run again needn't be scanned or parsed.
+ * Each entry is a file in the cache directory,
+ * named by a SHA-256 hash of the program's text,
+ * holding the program's tree in the compact binary form written by Node.save():
+ * integers are variable-length, positions are written as differences,
+ * and each identifier or literal is written once, then referred to by its index.
+ * Trees are cached before resolution, since slots belong to an environment;
+ * resolving a loaded tree is a single pass.
+ * An entry starts with a header: a magic number with the format version,
+ * the entry's key, and the length and CRC-32 of the tree,
+ * so a stale or corrupt entry is detected, deleted, and rebuilt.
+ * The cache is kept under a size limit by evicting
+ * the least recently used entries, by their files' modification times.
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class AstCache {
+
+	private static final int MAGIC=0x41535402;	// "AST", format version 2
+	private static final String SUFFIX=".ast";
+
+	public static final long LIMIT=64L<<20;		// default size limit, in bytes
+
+	private final Path dir;
+	private final long limit;
+
+	/**
+	 * The stream that Node.save() writes a tree to.
+	 */
+	public static class Output {
+
+		private byte[] buf=new byte[4096];
+		private int len=0;
+		private int last=0;	// the last position written
+		private Map<String,Integer> strings=new HashMap<String,Integer>();
+
+		private void ensure(int n) {
+			if (len+n>buf.length)
+				buf=Arrays.copyOf(buf,Math.max(len+n,buf.length*2));
+		}
+
+		public void writeByte(int b) {
+			ensure(1);
+			buf[len++]=(byte)b;
+		}
+
+		public void writeBoolean(boolean b) {
+			writeByte(b ? 1 : 0);
+		}
+
+		/**
+		 * Writes an int in seven-bit groups, low group first,
+		 * so a small non-negative int takes one or two bytes.
+		 * @param i the int
+		 */
+		public void writeInt(int i) {
+			ensure(5);
+			while ((i&~0x7f)!=0) {
+				buf[len++]=(byte)(i&0x7f|0x80);
+				i>>>=7;
+			}
+			buf[len++]=(byte)i;
+		}
+
+		/**
+		 * Writes a position in the source code, as its difference
+		 * from the last position written, which is usually small.
+		 * @param pos the position
+		 */
+		public void writePos(int pos) {
+			int delta=pos-last;
+			last=pos;
+			writeInt(delta<<1^delta>>31);
+		}
+
+		/**
+		 * Writes a double, in one or two bytes if it is a small whole number.
+		 * @param d the double
+		 */
+		public void writeDouble(double d) {
+			long bits=Double.doubleToRawLongBits(d);
+			if (d==(int)d && bits!=Double.doubleToRawLongBits(-0.0) && (int)d>=0) {
+				writeByte(0);
+				writeInt((int)d);
+				return;
+			}
+			writeByte(1);
+			ensure(8);
+			for (int shift=56; shift>=0; shift-=8)
+				buf[len++]=(byte)(bits>>>shift);
+		}
+
+		/**
+		 * Writes a string as its index in the strings written so far,
+		 * followed by its characters if it is new.
+		 * @param s the string
+		 */
+		public void writeString(String s) {
+			Integer i=strings.get(s);
+			if (i!=null) {
+				writeInt(i);
+				return;
+			}
+			writeInt(strings.size());
+			strings.put(s,strings.size());
+			writeInt(s.length());
+			ensure(3*s.length());
+			for (int j=0; j<s.length(); j++)
+				writeInt(s.charAt(j));
+		}
+
+	}
+
+	/**
+	 * The stream that each node's static load() reads a tree from.
+	 * A malformed stream throws an IOException.
+	 */
+	public static class Input {
+
+		private final byte[] buf;
+		private int pos;
+		private final int end;
+		private int last=0;	// the last position read
+		private List<String> strings=new ArrayList<String>();
+
+		/**
+		 * Reads from part of an array.
+		 * @param buf the array
+		 * @param pos the start of the part
+		 * @param end the end of the part
+		 */
+		public Input(byte[] buf, int pos, int end) {
+			this.buf=buf;
+			this.pos=pos;
+			this.end=end;
+		}
+
+		public int readByte() throws IOException {
+			if (pos>=end)
+				throw new EOFException("truncated tree");
+			return buf[pos++];
+		}
+
+		public boolean readBoolean() throws IOException {
+			return readByte()!=0;
+		}
+
+		public int readInt() throws IOException {
+			int i=0;
+			for (int shift=0; shift<35; shift+=7) {
+				int b=readByte();
+				i|=(b&0x7f)<<shift;
+				if (b>=0)
+					return i;
+			}
+			throw new IOException("bad int");
+		}
+
+		public int readPos() throws IOException {
+			int zigzag=readInt();
+			last+=zigzag>>>1^-(zigzag&1);
+			return last;
+		}
+
+		public double readDouble() throws IOException {
+			switch (readByte()) {
+				case 0: return readInt();
+				case 1: break;
+				default: throw new IOException("bad double");
+			}
+			long bits=0;
+			for (int i=0; i<8; i++)
+				bits=bits<<8|(readByte()&0xff);
+			return Double.longBitsToDouble(bits);
+		}
+
+		public String readString() throws IOException {
+			int i=readInt();
+			if (i>=0 && i<strings.size())
+				return strings.get(i);
+			if (i!=strings.size())
+				throw new IOException("bad string index: "+i);
+			int n=readInt();
+			if (n<0 || n>end-pos)
+				throw new IOException("bad string length: "+n);
+			char[] cs=new char[n];
+			for (int j=0; j<n; j++)
+				cs[j]=(char)readInt();
+			String s=new String(cs);
+			strings.add(s);
+			return s;
+		}
+
+		/**
+		 * Checks that the whole stream was read.
+		 * @throws IOException if there is more to read
+		 */
+		public void end() throws IOException {
+			if (pos!=end)
+				throw new IOException("trailing bytes after tree");
+		}
+
+	}
+
+	/**
+	 * Opens a cache, creating its directory if need be.
+	 * @param dir the cache directory
+	 * @param limit the size limit of the cache, in bytes
+	 * @throws IOException if the directory can't be created
+	 */
+	public AstCache(String dir, long limit) throws IOException {
+		this.dir=Files.createDirectories(Paths.get(dir));
+		this.limit=limit;
+	}
+
+	/**
+	 * Computes the key of a program's text.
+	 * Text from a String and from a Source hash the same,
+	 * as one byte per character.
+	 * @param program the program's text
+	 * @return the key, as hex digits,
+	 *         or null if the text has a character that isn't one byte
+	 */
+	public static String key(CharSequence program) {
+		MessageDigest md;
+		try {
+			md=MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		if (program instanceof Source)
+			md.update(((Source)program).bytes());
+		else {
+			String s=program.toString();
+			if (!StandardCharsets.ISO_8859_1.newEncoder().canEncode(s))
+				return null;
+			md.update(s.getBytes(StandardCharsets.ISO_8859_1));
+		}
+		StringBuilder sb=new StringBuilder();
+		for (byte b: md.digest())
+			sb.append(String.format("%02x",b));
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the cache directory.
+	 * @return the directory's name
+	 */
+	public String dir() {
+		return dir.toString();
+	}
+
+	private Path path(String key) {
+		return dir.resolve(key+SUFFIX);
+	}
+
+	/**
+	 * Loads a cached program, marking it as recently used.
+	 * A stale or corrupt entry is deleted, and treated as a miss.
+	 * @param key the program's key
+	 * @return the program's tree, or null if it isn't cached
+	 */
+	public Node get(String key) {
+		Path p=path(key);
+		byte[] entry;
+		try {
+			entry=Files.readAllBytes(p);
+		} catch (IOException e) {
+			return null;
+		}
+		try {
+			DataInputStream in=new DataInputStream(new ByteArrayInputStream(entry));
+			if (in.readInt()!=MAGIC)
+				throw new IOException("stale cache entry");
+			if (!in.readUTF().equals(key))
+				throw new IOException("misnamed cache entry");
+			int length=in.readInt();
+			long crc=in.readLong();
+			int start=entry.length-in.available();
+			if (length!=entry.length-start)
+				throw new IOException("truncated cache entry");
+			CRC32 check=new CRC32();
+			check.update(entry,start,length);
+			if (check.getValue()!=crc)
+				throw new IOException("corrupt cache entry");
+			Input tree=new Input(entry,start,entry.length);
+			Node node=NodeBlock.load(tree);
+			tree.end();
+			Files.setLastModifiedTime(p,FileTime.fromMillis(System.currentTimeMillis()));
+			return node;
+		} catch (IOException|RuntimeException e) {
+			try {
+				Files.deleteIfExists(p);
+			} catch (IOException ignored) {}
+			return null;
+		}
+	}
+
+	/**
+	 * Caches a program, then evicts entries to keep the cache under its limit.
+	 * An entry is written to a temporary file, then moved into place,
+	 * so a concurrent reader never sees it half written.
+	 * @param key the program's key
+	 * @param node the program's tree, folded but not yet resolved
+	 * @throws IOException if the program can't be saved, or written
+	 */
+	public void put(String key, Node node) throws IOException {
+		Output tree=new Output();
+		node.save(tree);
+		CRC32 crc=new CRC32();
+		crc.update(tree.buf,0,tree.len);
+		Path tmp=Files.createTempFile(dir,key,".tmp");
+		try {
+			try (DataOutputStream out=new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeUTF(key);
+				out.writeInt(tree.len);
+				out.writeLong(crc.getValue());
+				out.write(tree.buf,0,tree.len);
+			}
+			Files.move(tmp,path(key),StandardCopyOption.REPLACE_EXISTING,
+			           StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		evict();
+	}
+
+	/**
+	 * Deletes the least recently used entries,
+	 * until the cache is under its limit.
+	 * @throws IOException if the directory can't be listed
+	 */
+	private void evict() throws IOException {
+		evict(dir,"*"+SUFFIX,limit);
+	}
+
+	/**
+	 * Deletes the least recently used files of a kind in a directory,
+	 * by their modification times, until those left are under a limit.
+	 * Native evicts its executables this way too.
+	 * @param dir the directory
+	 * @param glob the pattern that names the files of the kind
+	 * @param limit the limit of their total size, in bytes
+	 * @throws IOException if the directory can't be listed
+	 */
+	public static void evict(Path dir, String glob, long limit) throws IOException {
+		List<Path> entries=new ArrayList<Path>();
+		Map<Path,BasicFileAttributes> attrs=new HashMap<Path,BasicFileAttributes>();
+		long size=0;
+		try (DirectoryStream<Path> ds=Files.newDirectoryStream(dir,glob)) {
+			for (Path p: ds)
+				try {
+					BasicFileAttributes a=Files.readAttributes(p,BasicFileAttributes.class);
+					entries.add(p);
+					attrs.put(p,a);
+					size+=a.size();
+				} catch (IOException e) {
+					// deleted by another process
+				}
+		}
+		if (size<=limit)
+			return;
+		entries.sort((a,b) -> attrs.get(a).lastModifiedTime()
+		                          .compareTo(attrs.get(b).lastModifiedTime()));
+		for (Path p: entries) {
+			if (size<=limit)
+				break;
+			Files.deleteIfExists(p);
+			size-=attrs.get(p).size();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * This class sends a command line, as Main takes it, to a Server,
+ * and prints what the programs write, as they write it:
+ *     java Client [-socket path] [-jvm] [-vm] [-dis] [-f file] program ...
+ * Its standard input is sent along, for rd.
+ * The default socket is the Server's default.
+ * "-f" files are opened by the server, so their paths are made absolute.
+ * The exit status is the server's, or 2 if there is no server.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+public class Client {
+
+	public static void main(String[] args) {
+		String path=Server.defaultPath();
+		int first=0;
+		if (args.length>=2 && args[0].equals("-socket")) {
+			path=args[1];
+			first=2;
+		}
+		SocketChannel ch;
+		try {
+			ch=SocketChannel.open(UnixDomainSocketAddress.of(path));
+		} catch (IOException e) {
+			System.err.println("no server on "+path+": "+e.getMessage());
+			System.exit(2);
+			return;
+		}
+		try {
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(Server.output(ch)));
+			out.writeInt(args.length-first);
+			for (int i=first; i<args.length; i++) {
+				String arg=args[i];
+				if (i>first && args[i-1].equals("-f"))
+					arg=Paths.get(arg).toAbsolutePath().toString();
+				byte[] bytes=arg.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			Thread input=new Thread(() -> {
+				try {
+					System.in.transferTo(out);
+					out.flush();
+					ch.shutdownOutput();
+				} catch (IOException e) {
+					// the server is done
+				}
+			});
+			input.setDaemon(true);
+			input.start();
+			DataInputStream in=new DataInputStream(new BufferedInputStream(Server.input(ch)));
+			while (true) {
+				int tag=in.readByte();
+				if (tag==Server.EXIT) {
+					System.out.flush();
+					System.exit(in.readInt());
+				}
+				byte[] frame=new byte[in.readInt()];
+				in.readFully(frame);
+				PrintStream s=tag==Server.ERR ? System.err : System.out;
+				s.write(frame,0,frame.length);
+				s.flush();
+			}
+		} catch (IOException e) {
+			System.err.println("lost the server: "+e);
+			System.exit(2);
+		}
+	}
+
+}
@@ -1,10 +1,16 @@
 /**
  * This class generates C code from the parsed program.
  * It writes the generated C code to a file specified by the Code environment variable.
+ * Each program's code is streamed, as it is generated, into a temporary file,
+ * since the variable declarations that precede it are only known
+ * once every program has been resolved.
+ * The C file is then written in one pass, copying the code from the temporary file,
+ * so neither the programs' code nor the C file is ever held in memory.
  */
 
-import java.util.HashMap;
 import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
 
 public class Code {
 
@@ -18,27 +24,120 @@ public class Code {
 		"}",
 	};
 
+	private String fn;		// the C file's name, without ".c"
+	private Path body;		// the temporary file of the programs' code
+	private Writer out;		// the writer to body
+
 	/**
-	 * Constructs a Code generator and writes the C code to a file.
-	 * @param code the generated C code
-	 * @param env the environment containing variable declarations
+	 * Constructs a Code generator, if the Code environment variable is set.
+	 */
+	public Code() {
+		this(System.getenv("Code"));
+	}
+
+	/**
+	 * Constructs a Code generator.
+	 * @param fn the C file's name, without ".c", or null for no C file
 	 */
-	public Code(String code, Environment env) {
-		String fn=System.getenv("Code");
+	public Code(String fn) {
+		this.fn=fn;
 		if (fn==null)
 			return;
 		try {
-			BufferedWriter f=new BufferedWriter(new FileWriter(fn+".c"));
-			for (String s: prologue)
-				f.write(s+"\n");
-			f.write(env.toC());
-			f.write(code);
-			for (String s: epilogue)
-				f.write(s+"\n");
-			f.close();
+			Path c=Paths.get(fn+".c").toAbsolutePath();
+			body=Files.createTempFile(c.getParent(),c.getFileName().toString(),".body");
+			out=Files.newBufferedWriter(body,StandardCharsets.UTF_8);
+		} catch (Exception e) {
+			System.err.println(e);
+			abandon();
+		}
+	}
+
+	/**
+	 * Generates the C code of a program.
+	 * @param node the root of the program
+	 */
+	public void add(Node node) {
+		if (out==null)
+			return;
+		try {
+			node.code(out);
+		} catch (Exception e) {
+			System.err.println(e);
+			abandon();
+		}
+	}
+
+	/**
+	 * Writes the C file: the prologue, the variable declarations,
+	 * the programs' code, and the epilogue.
+	 * Only the variables that have been given values are declared.
+	 * @param env the environment containing variable declarations
+	 * @return true if the C file was written
+	 */
+	public boolean close(Environment env) {
+		return close(env,false);
+	}
+
+	/**
+	 * Writes the C file.
+	 * @param env the environment containing variable declarations
+	 * @param all whether to declare every resolved variable,
+	 *            rather than only those that have been given values,
+	 *            since the programs might not have been evaluated
+	 * @return true if the C file was written
+	 */
+	public boolean close(Environment env, boolean all) {
+		return close(env,all,false);
+	}
+
+	/**
+	 * Writes the C file, with its variables initialized to 0,
+	 * or to their values in the environment.
+	 * @param env the environment containing variable declarations
+	 * @param all whether to declare every resolved variable
+	 * @param current whether to initialize the variables that have been
+	 *                given values to those values (see Environment.toC())
+	 * @return true if the C file was written
+	 */
+	public boolean close(Environment env, boolean all, boolean current) {
+		if (out==null)
+			return false;
+		boolean written=false;
+		try {
+			out.close();
+			try (Writer f=Files.newBufferedWriter(Paths.get(fn+".c"),StandardCharsets.UTF_8)) {
+				for (String s: prologue)
+					f.write(s+"\n");
+				f.write(env.toC(all,current));
+				try (Reader r=Files.newBufferedReader(body,StandardCharsets.UTF_8)) {
+					r.transferTo(f);
+				}
+				for (String s: epilogue)
+					f.write(s+"\n");
+			}
+			written=true;
 		} catch (Exception e) {
 			System.err.println(e);
 		}
+		abandon();
+		return written;
+	}
+
+	/**
+	 * Stops generating code, and deletes the temporary file.
+	 */
+	private void abandon() {
+		try {
+			if (out!=null)
+				out.close();
+			if (body!=null)
+				Files.deleteIfExists(body);
+		} catch (IOException e) {
+			// nothing more can be done
+		}
+		out=null;
+		body=null;
 	}
 
 }
@@ -0,0 +1,141 @@
+// This class is an environment that programs can share across threads,
+// evaluating against it at the same time, without locking.
+// Values are kept in the same double[] frame as in Environment,
+// but each slot is read and written through a VarHandle,
+// with release/acquire semantics, rather than with plain accesses:
+// a value is stored, and then its defined flag,
+// and a thread that sees a variable as defined sees its value,
+// and everything the storing thread did before storing it.
+// A double is never torn, and threads that store different variables
+// never wait for each other; a slot holds whichever value was stored last.
+// Resolution (slot()) is locked, since it may grow the frame,
+// so slots must be resolved before the programs that use them
+// start evaluating in other threads.
+// Neither Isolated nor Parallel needs it: an isolated program has an
+// environment of its own, and Parallel runs programs that share
+// a variable one after the other, each started by the pool once those
+// before it are done, so a plain view of the frame (see view()) is enough.
+// It is for programs that do share variables while running,
+// as in EnvironmentStress, and the bench module's contention benchmark.
+// Jit and Vm code access the frame directly, with plain accesses,
+// so only the tree-walking evaluator has these guarantees.
+// toC() declares a snapshot (see snapshot()).
+
+import java.lang.invoke.*;
+
+public class ConcurrentEnvironment extends Environment {
+
+	private static final VarHandle VALUES =
+		MethodHandles.arrayElementVarHandle(double[].class);
+	private static final VarHandle DEFINED =
+		MethodHandles.arrayElementVarHandle(boolean[].class);
+
+	/**
+	 * Constructs an empty environment.
+	 */
+	public ConcurrentEnvironment() {}
+
+	/**
+	 * Constructs a view of another environment (see view()).
+	 * @param env the other environment
+	 * @param s the view's sink
+	 */
+	private ConcurrentEnvironment(ConcurrentEnvironment env, OutputSink s) {
+		super(env, s);
+	}
+
+	/**
+	 * Resolves a variable name to its slot, under a lock.
+	 * @param var the variable name
+	 * @return the slot of the variable
+	 */
+	public synchronized int slot(String var) {
+		return super.slot(var);
+	}
+
+	/**
+	 * Looks up the slot of a variable, under a lock.
+	 * @param var the variable name
+	 * @return the slot of the variable, or null if it has none
+	 */
+	protected synchronized Integer lookup(String var) {
+		return super.lookup(var);
+	}
+
+	/**
+	 * Stores a value in a resolved slot, then marks it defined,
+	 * both with release semantics.
+	 * @param slot the slot of the variable
+	 * @param val the value to store
+	 * @return the value that was stored
+	 */
+	public double put(int slot, double val) {
+		VALUES.setRelease(values(), slot, val);
+		DEFINED.setRelease(defined(), slot, true);
+		return val;
+	}
+
+	/**
+	 * Retrieves the value in a resolved slot, with acquire semantics.
+	 * @param pos the position in the source code (for error reporting)
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 * @throws EvalException if the variable is not defined
+	 */
+	public double get(int pos, int slot) throws EvalException {
+		if (!(boolean)DEFINED.getAcquire(defined(), slot)) {
+			throw new EvalException(pos, "undefined variable: " + name(slot));
+		}
+		return (double)VALUES.getAcquire(values(), slot);
+	}
+
+	/**
+	 * Retrieves the value in a slot that is certainly defined,
+	 * with acquire semantics.
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 */
+	public double load(int slot) {
+		return (double)VALUES.getAcquire(values(), slot);
+	}
+
+	/**
+	 * Makes a view of this environment, which is concurrent too.
+	 * @param s the view's sink
+	 * @return the view
+	 */
+	public Environment view(OutputSink s) {
+		return new ConcurrentEnvironment(this, s);
+	}
+
+	/**
+	 * Copies the environment into a plain one, while programs may be
+	 * storing into it. Each variable's value is one that was stored in it,
+	 * but variables stored concurrently may be from different moments.
+	 * Slots are copied in order, so they are the same in the copy.
+	 * @return the copy
+	 */
+	public synchronized Environment snapshot() {
+		Environment copy = new Environment();
+		double[] values = values();
+		boolean[] defined = defined();
+		for (int i = 0; i < size(); i++) {
+			copy.slot(name(i));
+			if ((boolean)DEFINED.getAcquire(defined, i)) {
+				copy.put(i, (double)VALUES.getAcquire(values, i));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Generates C code declarations for a snapshot of the environment.
+	 * @param all whether to declare every resolved variable,
+	 *            or only those that have been given values
+	 * @return C code string with variable declarations
+	 */
+	public String toC(boolean all) {
+		return snapshot().toC(all);
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * This class is the context of constant propagation (see Node.propagate()):
+ * an environment whose variables are those known to hold a constant value,
+ * at a point in a program.
+ * A program starts knowing what the programs before it, in the same
+ * environment, were known to leave (see Main and Parallel),
+ * except the variables that one which failed writes,
+ * since it may have left any value in them.
+ * Only constants are known, and never a value that was read,
+ * so what is pruned would be pruned whatever the input,
+ * and the generated C code, which runs on its own input, prunes the same.
+ * An assignment of an expression whose variables are all known
+ * makes its variable known, and any other assignment, or rd, forgets it.
+ * After an if statement, a variable is known if both branches agree on it,
+ * to the bit, and in and after a while loop, the variables it writes are forgotten.
+ * A condition is constant if it can be evaluated in this environment,
+ * and it is evaluated as it would be, so it has the value it would have.
+ * Evaluating it can't fail otherwise, since arithmetic doesn't throw,
+ * and a known variable has been given a value.
+ */
+
+import java.util.*;
+
+public class Constants extends Environment {
+
+	private Map<Integer,Double> known=new HashMap<Integer,Double>();
+
+	/**
+	 * Constructs a context that knows nothing.
+	 */
+	public Constants() {}
+
+	private Constants(Constants constants) {
+		known.putAll(constants.known);
+	}
+
+	/**
+	 * Copies the context, for a branch.
+	 * @return the copy
+	 */
+	public Constants copy() {
+		return new Constants(this);
+	}
+
+	/**
+	 * Forgets the variables that another branch doesn't know the same value of.
+	 * @param other the context at the end of the other branch
+	 */
+	public void meet(Constants other) {
+		known.entrySet().removeIf(e -> {
+			Double v=other.known.get(e.getKey());
+			return v==null || Double.doubleToRawLongBits(v)!=Double.doubleToRawLongBits(e.getValue());
+		});
+	}
+
+	/**
+	 * Forgets the variables a node writes, such as a loop,
+	 * whose value may be anything when it is tested.
+	 * @param node the node
+	 */
+	public void forget(Node node) {
+		node.effects(new Effects() {
+			public void write(int slot) {
+				super.write(slot);
+				forget(slot);
+			}
+		});
+	}
+
+	/**
+	 * Forgets a variable.
+	 * @param slot the slot of the variable
+	 */
+	public void forget(int slot) {
+		known.remove(slot);
+	}
+
+	/**
+	 * Knows a variable as another context does.
+	 * @param slot the slot of the variable
+	 * @param other the other context
+	 */
+	public void take(int slot, Constants other) {
+		Double val=other.known.get(slot);
+		if (val==null)
+			known.remove(slot);
+		else
+			known.put(slot,val);
+	}
+
+	/**
+	 * Gets the constant value of an expression, or condition.
+	 * @param node the expression
+	 * @return the value, or null if it isn't constant
+	 */
+	public Double value(Node node) {
+		try {
+			return node.eval(this);
+		} catch (EvalException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Makes a variable known.
+	 * @param slot the slot of the variable
+	 * @param val the value it is known to hold
+	 * @return the value
+	 */
+	public double put(int slot, double val) {
+		known.put(slot,val);
+		return val;
+	}
+
+	/**
+	 * Gets the value of a known variable.
+	 * @param pos the position in the source code
+	 * @param slot the slot of the variable
+	 * @return the value
+	 * @throws EvalException if the variable isn't known
+	 */
+	public double get(int pos, int slot) throws EvalException {
+		Double val=known.get(slot);
+		if (val==null)
+			throw new EvalException(pos,"not constant");
+		return val;
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * This class is the context of definite-assignment analysis
+ * (see Node.definite()): the variables that are certainly defined,
+ * at a point in a program, on every path that reaches it.
+ * A program starts with the variables its environment has defined,
+ * by the programs before it, when it is about to run,
+ * since a variable, once defined, never becomes undefined.
+ * An assignment, or rd, defines its variable, if it doesn't fail.
+ * After an if statement, the variables both branches define are defined,
+ * and after a while loop, only those defined before it,
+ * since it may not iterate.
+ * A variable read where it is certainly defined is read without a check
+ * (see Environment.load()), and any other read keeps the check,
+ * which fails with its position.
+ */
+
+import java.util.*;
+
+public class Definite {
+
+	private final BitSet defined;
+
+	/**
+	 * Constructs the context at the start of a program.
+	 * @param env the environment the program is about to run in
+	 */
+	public Definite(Environment env) {
+		defined=new BitSet();
+		boolean[] d=env.defined();
+		for (int i=0; i<env.size(); i++)
+			if (d[i])
+				defined.set(i);
+	}
+
+	private Definite(Definite definite) {
+		defined=(BitSet)definite.defined.clone();
+	}
+
+	/**
+	 * Copies the context, for a branch.
+	 * @return the copy
+	 */
+	public Definite copy() {
+		return new Definite(this);
+	}
+
+	/**
+	 * Keeps only the variables another branch defines too.
+	 * @param other the context at the end of the other branch
+	 */
+	public void meet(Definite other) {
+		defined.and(other.defined);
+	}
+
+	/**
+	 * Notes that a variable is defined.
+	 * @param slot the slot of the variable
+	 */
+	public void define(int slot) {
+		defined.set(slot);
+	}
+
+	/**
+	 * Checks whether a variable is certainly defined.
+	 * @param slot the slot of the variable
+	 * @return true if it is
+	 */
+	public boolean defined(int slot) {
+		return defined.get(slot);
+	}
+
+}
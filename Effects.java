@@ -0,0 +1,99 @@
+/**
+ * This class is the read/write set of a program:
+ * the slots of the variables it reads and writes,
+ * and whether it reads input, with rd, or writes output, with wr.
+ * It is gathered from a resolved tree by Node.effects(),
+ * and is conservative: a variable that a program might read or write,
+ * on any path, is in its set.
+ * Two programs whose sets don't conflict can run in either order,
+ * or at the same time, with the same result (see Parallel).
+ */
+
+import java.util.*;
+
+public class Effects {
+
+	private final BitSet reads=new BitSet();
+	private final BitSet writes=new BitSet();
+	private boolean input=false;
+	private boolean output=false;
+
+	/**
+	 * Adds a variable that is read.
+	 * @param slot the slot of the variable
+	 */
+	public void read(int slot) {
+		reads.set(slot);
+	}
+
+	/**
+	 * Adds a variable that is written.
+	 * @param slot the slot of the variable
+	 */
+	public void write(int slot) {
+		writes.set(slot);
+	}
+
+	/**
+	 * Gets the variables that are read or written.
+	 * @return the slots of the variables
+	 */
+	public BitSet variables() {
+		BitSet all=(BitSet)reads.clone();
+		all.or(writes);
+		return all;
+	}
+
+	/**
+	 * Checks whether a variable is written.
+	 * @param slot the slot of the variable
+	 * @return true if the program might write it
+	 */
+	public boolean writes(int slot) {
+		return writes.get(slot);
+	}
+
+	/**
+	 * Notes that the program reads input.
+	 */
+	public void input() {
+		input=true;
+	}
+
+	/**
+	 * Notes that the program writes output.
+	 */
+	public void output() {
+		output=true;
+	}
+
+	/**
+	 * Checks whether the program reads input.
+	 * @return true if it has an rd statement
+	 */
+	public boolean inputs() {
+		return input;
+	}
+
+	/**
+	 * Checks whether the program writes output.
+	 * @return true if it has a wr statement
+	 */
+	public boolean outputs() {
+		return output;
+	}
+
+	/**
+	 * Checks whether a later program must wait for this one:
+	 * whether one writes a variable that the other reads or writes,
+	 * or both read input, which must be consumed in order.
+	 * Output doesn't conflict, since it is buffered per program.
+	 * @param later the later program's effects
+	 * @return true if the programs conflict
+	 */
+	public boolean conflicts(Effects later) {
+		return writes.intersects(later.reads) || writes.intersects(later.writes)
+		    || reads.intersects(later.writes) || (input && later.input);
+	}
+
+}
@@ -1,14 +1,123 @@
 // This class provides an environment for variable storage and management.
-// It uses a HashMap to store variable names and their values.
+// Each variable name is resolved, once, to a numeric slot,
+// and values are kept in a primitive double[] frame indexed by slot.
 // Accessing an undefined variable throws an EvalException.
 // The environment also generates C code declarations for all variables.
+// Values written by wr go to the environment's sink, which is
+// the shared one (see NodeWr) unless a program has a private one,
+// and rd reads from standard input, unless it has a private reader.
+// If Metrics are enabled, it counts the statements executed in it,
+// by the tree-walking evaluator; a view counts its own.
 
 import java.util.*;
 
 public class Environment {
 
-	// HashMap to store variable names and their values
-	private Map<String, Double> variables = new HashMap<String, Double>();
+	// HashMap from variable names to their slots, used only during resolution
+	private Map<String, Integer> slots = new HashMap<String, Integer>();
+
+	// per-slot names, values, and whether a value has been stored
+	private String[] names = new String[8];
+	private double[] values = new double[8];
+	private boolean[] defined = new boolean[8];
+	private int size = 0;
+
+	// where wr writes, or null for the shared sink
+	private OutputSink sink = null;
+
+	// where rd reads, or null for standard input
+	private NumberReader reader = null;
+
+	// statements executed in this environment (see Metrics)
+	private long statements = 0;
+
+	/**
+	 * Constructs an empty environment.
+	 */
+	public Environment() {}
+
+	/**
+	 * Constructs a view of another environment,
+	 * which shares its slots and values, but has its own sink.
+	 * @param env the other environment
+	 * @param s the view's sink
+	 */
+	protected Environment(Environment env, OutputSink s) {
+		slots = env.slots;
+		names = env.names;
+		values = env.values;
+		defined = env.defined;
+		size = env.size;
+		sink = s;
+		reader = env.reader;
+	}
+
+	/**
+	 * Resolves a variable name to its slot, allocating a new slot
+	 * the first time the name is seen.
+	 * @param var the variable name
+	 * @return the slot of the variable
+	 */
+	public int slot(String var) {
+		Integer slot = slots.get(var);
+		if (slot != null) {
+			return slot;
+		}
+		if (size == values.length) {
+			int n = size * 2;
+			names = Arrays.copyOf(names, n);
+			values = Arrays.copyOf(values, n);
+			defined = Arrays.copyOf(defined, n);
+		}
+		names[size] = var;
+		slots.put(var, size);
+		return size++;
+	}
+
+	/**
+	 * Looks up the slot of a variable, without allocating one.
+	 * @param var the variable name
+	 * @return the slot of the variable, or null if it has none
+	 */
+	protected Integer lookup(String var) {
+		return slots.get(var);
+	}
+
+	/**
+	 * Gets the number of slots.
+	 * @return the number of resolved variables
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the name of a resolved variable.
+	 * @param slot the slot of the variable
+	 * @return the variable name
+	 */
+	public String name(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * Gets the frame of values, indexed by slot.
+	 * The frame is replaced when slots are added,
+	 * so it is only valid until the next call to slot().
+	 * @return the frame
+	 */
+	public double[] values() {
+		return values;
+	}
+
+	/**
+	 * Gets the flags that tell whether each slot holds a value.
+	 * Like the frame, they are valid until the next call to slot().
+	 * @return the defined flags, indexed by slot
+	 */
+	public boolean[] defined() {
+		return defined;
+	}
 
 	/**
 	 * Stores a variable and its value in the environment.
@@ -17,7 +126,18 @@ public class Environment {
 	 * @return the value that was stored
 	 */
 	public double put(String var, double val) {
-		variables.put(var, val);
+		return put(slot(var), val);
+	}
+
+	/**
+	 * Stores a value in a resolved slot.
+	 * @param slot the slot of the variable
+	 * @param val the value to store
+	 * @return the value that was stored
+	 */
+	public double put(int slot, double val) {
+		values[slot] = val;
+		defined[slot] = true;
 		return val;
 	}
 
@@ -29,39 +149,184 @@ public class Environment {
 	 * @throws EvalException if the variable is not defined
 	 */
 	public double get(int pos, String var) throws EvalException {
-		if (!variables.containsKey(var)) {
+		Integer slot = lookup(var);
+		if (slot == null) {
 			throw new EvalException(pos, "undefined variable: " + var);
 		}
-		return variables.get(var);
+		return get(pos, slot);
+	}
+
+	/**
+	 * Retrieves the value in a resolved slot.
+	 * @param pos the position in the source code (for error reporting)
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 * @throws EvalException if the variable is not defined
+	 */
+	public double get(int pos, int slot) throws EvalException {
+		if (!defined[slot]) {
+			throw new EvalException(pos, "undefined variable: " + names[slot]);
+		}
+		return values[slot];
 	}
 
 	/**
-	 * Generates C code declarations for all variables in the environment.
+	 * Retrieves the value in a resolved slot, without checking
+	 * that it is defined, which it must certainly be (see Definite).
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 */
+	public double load(int slot) {
+		return values[slot];
+	}
+
+	/**
+	 * Gets the sink that wr writes to.
+	 * @return the environment's sink, or else the shared one
+	 */
+	public OutputSink sink() {
+		return sink != null ? sink : NodeWr.sink();
+	}
+
+	/**
+	 * Gives the environment a private sink for wr.
+	 * @param s the sink, or null for the shared one
+	 */
+	public void sink(OutputSink s) {
+		sink = s;
+	}
+
+	/**
+	 * Gets the environment's private reader for rd.
+	 * @return the reader, or null if rd reads standard input
+	 */
+	public NumberReader reader() {
+		return reader;
+	}
+
+	/**
+	 * Gives the environment a private reader for rd.
+	 * @param r the reader, or null for standard input
+	 */
+	public void reader(NumberReader r) {
+		reader = r;
+	}
+
+	/**
+	 * Counts statements executed in this environment.
+	 * @param n the number of statements
+	 */
+	public void executed(long n) {
+		statements += n;
+	}
+
+	/**
+	 * Gets the number of statements executed in this environment, so far.
+	 * @return the number of statements
+	 */
+	public long statements() {
+		return statements;
+	}
+
+	/**
+	 * Makes a view of this environment, which shares its slots and values,
+	 * but has its own sink, so programs that run concurrently in it
+	 * can keep their output apart (see Parallel).
+	 * The view is only valid until a slot is added to this environment.
+	 * @param s the view's sink
+	 * @return the view
+	 */
+	public Environment view(OutputSink s) {
+		return new Environment(this, s);
+	}
+
+	/**
+	 * Copies the values of another environment's defined variables into this one,
+	 * as if that environment's programs had been run in this one,
+	 * so their variables are declared by toC().
+	 * @param other the other environment
+	 */
+	public void merge(Environment other) {
+		for (int i = 0; i < other.size; i++) {
+			if (other.defined[i]) {
+				put(other.names[i], other.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Generates C code declarations for all variables in the environment
+	 * that have been given values.
 	 * @return C code string with variable declarations
 	 */
 	public String toC() {
-		if (variables.isEmpty()) {
-			return "";
-		}
-		
+		return toC(false);
+	}
+
+	/**
+	 * Generates C code declarations for variables in the environment.
+	 * Variables are declared in slot order, which is the order
+	 * in which resolution first saw them, so the same programs
+	 * always generate the same declarations.
+	 * @param all whether to declare every resolved variable
+	 *            (e.g., for programs that have not been evaluated),
+	 *            or only those that have been given values
+	 * @return C code string with variable declarations
+	 */
+	public String toC(boolean all) {
+		return toC(all, false);
+	}
+
+	/**
+	 * Generates C code declarations for variables in the environment,
+	 * initialized to 0, or to their current values.
+	 * @param all whether to declare every resolved variable,
+	 *            or only those that have been given values
+	 * @param current whether to initialize the variables that have been
+	 *            given values to those values, for programs that continue
+	 *            from this environment (see Native), rather than to 0
+	 * @return C code string with variable declarations
+	 */
+	public String toC(boolean all, boolean current) {
 		StringBuilder sb = new StringBuilder();
-		sb.append("double ");
-		
-		// Add all variable names
-		String sep = "";
-		for (String var : variables.keySet()) {
-			sb.append(sep).append(var);
-			sep = ",";
+		String sep = "double ";
+		for (int i = 0; i < size; i++) {
+			if (all || defined[i]) {
+				sb.append(sep).append(names[i]);
+				sep = ",";
+			}
+		}
+		if (sb.length() == 0) {
+			return "";
 		}
 		sb.append(";\n");
 		
-		// Initialize all variables to 0
-		for (String var : variables.keySet()) {
-			sb.append(var).append("=0;");
+		// Initialize all variables to 0, or to their values
+		for (int i = 0; i < size; i++) {
+			if (all || defined[i]) {
+				sb.append(names[i]).append("=");
+				sb.append(current && defined[i] ? literal(values[i]) : "0");
+				sb.append(";");
+			}
 		}
 		sb.append("\n");
 		
 		return sb.toString();
 	}
 
+	/**
+	 * Gets the C literal of a value, exactly, as a hexadecimal float.
+	 * @param d the value
+	 * @return the literal
+	 */
+	private static String literal(double d) {
+		if (Double.isNaN(d)) {
+			return "(0.0/0.0)";
+		}
+		if (Double.isInfinite(d)) {
+			return d > 0 ? "(1.0/0.0)" : "(-1.0/0.0)";
+		}
+		return Double.toHexString(d);
+	}
+
 }
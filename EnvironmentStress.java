@@ -0,0 +1,185 @@
+/**
+ * This class stress-tests ConcurrentEnvironment, from several threads at once:
+ *     java EnvironmentStress [threads] [iterations]
+ * It checks that:
+ *   - programs that each loop over their own variables,
+ *     evaluated at the same time in one environment, get the right results;
+ *   - a value published by storing a flag after it is seen
+ *     by any thread that sees the flag;
+ *   - doubles are never torn;
+ *   - snapshots, taken while values are stored, declare every variable.
+ * It prints each failure, and exits with status 1 if there are any.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class EnvironmentStress {
+
+	private static final AtomicInteger failures = new AtomicInteger();
+
+	private static void fail(String message) {
+		if (failures.getAndIncrement() < 10)
+			System.err.println("EnvironmentStress: " + message);
+	}
+
+	/**
+	 * Runs tasks, all at once, and waits for them.
+	 * @param tasks the tasks
+	 */
+	private static void all(List<Callable<Object>> tasks) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (Callable<Object> task : tasks)
+				futures.add(pool.submit(() -> {
+					start.await();
+					return task.call();
+				}));
+			start.countDown();
+			for (Future<Object> f : futures)
+				f.get();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Evaluates one program per thread, each with its own variables,
+	 * but all in one environment, and checks each program's result.
+	 */
+	private static void programs(int threads, int iterations) throws Exception {
+		Environment env = new ConcurrentEnvironment();
+		Parser parser = new Parser();
+		List<Node> nodes = new ArrayList<Node>();
+		for (int t = 0; t < threads; t++) {
+			String i = "i" + t, s = "s" + t;
+			Node node = parser.parse(i + " = 0; " + s + " = 0; while " + i + " < " + iterations
+				+ " do begin " + s + " = " + s + " + " + i + "; " + i + " = " + i + " + 1 end").fold();
+			node.resolve(env);
+			nodes.add(node);
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (Node node : nodes)
+			tasks.add(() -> node.eval(env));
+		all(tasks);
+		double expected = (double)iterations * (iterations - 1) / 2;
+		for (int t = 0; t < threads; t++) {
+			double s = env.get(0, "s" + t);
+			if (s != expected)
+				fail("program " + t + ": s" + t + "=" + s + ", expected " + expected);
+		}
+	}
+
+	/**
+	 * Has a writer store data, then a flag, round after round,
+	 * while readers check that, once they see a round's flag,
+	 * they see that round's data.
+	 */
+	private static void publication(int threads, int iterations) throws Exception {
+		Environment env = new ConcurrentEnvironment();
+		int flag = env.slot("flag");
+		int data = env.slot("data");
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		tasks.add(() -> {
+			for (int i = 1; i <= iterations; i++) {
+				env.put(data, i);
+				env.put(flag, i);
+			}
+			return null;
+		});
+		for (int t = 1; t < threads; t++)
+			tasks.add(() -> {
+				double seen = 0;
+				while (seen < iterations) {
+					double f;
+					try {
+						f = env.get(0, flag);
+					} catch (EvalException e) {
+						Thread.onSpinWait();
+						continue;	// not stored yet
+					}
+					double d = env.get(0, data);	// defined, if flag is
+					if (d < f)
+						fail("saw flag " + f + " with data " + d);
+					seen = f;
+				}
+				return null;
+			});
+		all(tasks);
+	}
+
+	/**
+	 * Has writers store two values, whose bits differ in both halves,
+	 * into one variable, while readers check that they only see those values.
+	 */
+	private static void tearing(int threads, int iterations) throws Exception {
+		Environment env = new ConcurrentEnvironment();
+		int slot = env.slot("x");
+		double a = Double.longBitsToDouble(0x1111111111111111L);
+		double b = Double.longBitsToDouble(0x2222222222222222L);
+		env.put(slot, a);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < threads; t++) {
+			boolean writer = t % 2 == 0;
+			tasks.add(() -> {
+				for (int i = 0; i < iterations; i++)
+					if (writer) {
+						env.put(slot, i % 2 == 0 ? a : b);
+					} else {
+						double x = env.get(0, slot);
+						if (x != a && x != b)
+							fail("torn value " + Long.toHexString(Double.doubleToRawLongBits(x)));
+					}
+				return null;
+			});
+		}
+		all(tasks);
+	}
+
+	/**
+	 * Takes snapshots while values are stored,
+	 * and checks that each declares every variable.
+	 */
+	private static void snapshots(int threads, int iterations) throws Exception {
+		ConcurrentEnvironment env = new ConcurrentEnvironment();
+		int vars = 64;
+		for (int v = 0; v < vars; v++)
+			env.put("v" + v, v);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t = 1; t < threads; t++) {
+			int first = t;
+			tasks.add(() -> {
+				for (int i = 0; i < iterations; i++)
+					env.put((first + i) % vars, i);
+				return null;
+			});
+		}
+		tasks.add(() -> {
+			for (int i = 0; i < iterations / 100; i++) {
+				Environment copy = env.snapshot();
+				if (copy.size() != vars || !copy.toC().startsWith("double v0,v1,"))
+					fail("snapshot: " + copy.toC());
+			}
+			return null;
+		});
+		all(tasks);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		programs(threads, iterations);
+		publication(threads, iterations);
+		tearing(threads, iterations);
+		snapshots(threads, iterations);
+		if (failures.get() > 0) {
+			System.err.println("EnvironmentStress: " + failures.get() + " failures");
+			System.exit(1);
+		}
+		System.out.println("EnvironmentStress: passed");
+	}
+
+}
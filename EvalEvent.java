@@ -0,0 +1,26 @@
+/**
+ * This class is a JDK Flight Recorder event for running a program
+ * (see Main.run()). Its duration is the time the program ran.
+ */
+
+import jdk.jfr.*;
+
+@Name("translator.Eval")
+@Label("Eval")
+@Category("Translator")
+@Description("A program run to its end, or to an error")
+public class EvalEvent extends Event {
+
+	@Label("Engine")
+	@Description("eval, jvm, or vm")
+	String engine;
+
+	@Label("Variables")
+	@Description("Variables resolved in the program's environment")
+	int variables;
+
+	@Label("Error")
+	@Description("The error the program stopped with, if any")
+	String error;
+
+}
@@ -0,0 +1,170 @@
+/**
+ * This class is the context of loop-invariant code motion, and strength
+ * reduction, for one while loop (see Node.hoist()).
+ * The variables the loop writes, with assignments or rd, are gathered
+ * from its tree (see Effects), with how often each is written.
+ * An expression that reads none of them has the same value
+ * on every iteration, so it is hoisted into a temporary
+ * (see NodeFactInvariant), computed when the loop is entered.
+ * A product "i*k", where the loop's only write to i is "i = i + c",
+ * is strength-reduced into a running value, which grows by k*c
+ * whenever i does (see NodeFactInduction).
+ * Only left-most operands are hoisted, since floating-point
+ * addition and multiplication aren't associative,
+ * so every value is computed by the same operations, on the same operands,
+ * and so is the same, to the bit, as it was without the pass.
+ *
+ * The loop's tree is walked twice: first to find each variable's
+ * induction update ("i = i + c"), and then to rewrite expressions.
+ */
+
+import java.util.*;
+
+public class Hoist {
+
+	/**
+	 * The effects of a loop, counting the writes to each variable.
+	 */
+	private static class Writes extends Effects {
+		final Map<Integer,Integer> counts=new HashMap<Integer,Integer>();
+		public void write(int slot) {
+			super.write(slot);
+			counts.merge(slot,1,Integer::sum);
+		}
+	}
+
+	private final Writes writes=new Writes();
+	private boolean discovering=true;
+
+	// each induction variable's update, and the products reduced with it
+	private final Map<Integer,NodeAssnIdOpNum> updates=new HashMap<Integer,NodeAssnIdOpNum>();
+	private final Map<Integer,List<NodeFactInduction>> products=new HashMap<Integer,List<NodeFactInduction>>();
+	private final Map<Integer,NodeAssnInduction> reduced=new HashMap<Integer,NodeAssnInduction>();
+
+	private final List<NodeFactInvariant> invariants=new ArrayList<NodeFactInvariant>();
+
+	/**
+	 * Constructs the context of a loop.
+	 * @param loop the loop, which must have been resolved
+	 */
+	public Hoist(NodeWhile loop) {
+		loop.effects(writes);
+	}
+
+	/**
+	 * Checks whether the loop's tree is being walked to find induction updates,
+	 * rather than to rewrite expressions.
+	 * @return true for the first walk
+	 */
+	public boolean discovering() {
+		return discovering;
+	}
+
+	/**
+	 * Ends the first walk, and starts the second.
+	 */
+	public void rewrite() {
+		discovering=false;
+	}
+
+	/**
+	 * Checks whether a node reads no variable that the loop writes,
+	 * so its value is the same on every iteration.
+	 * @param node the node, which reads but doesn't write
+	 * @return true if the node is invariant
+	 */
+	public boolean invariant(Node node) {
+		Effects effects=new Effects();
+		node.effects(effects);
+		return !writes.conflicts(effects);
+	}
+
+	/**
+	 * Notes an assignment "id = src addop num", which, if id and src
+	 * are the same variable, and the loop writes it nowhere else,
+	 * is the update of an induction variable.
+	 * @param assn the assignment
+	 * @param slot the slot of id
+	 * @param src the slot of src
+	 */
+	public void update(NodeAssnIdOpNum assn, int slot, int src) {
+		if (slot==src && writes.counts.get(slot)==1)
+			updates.put(slot,assn);
+	}
+
+	/**
+	 * Hoists an invariant expression into a temporary.
+	 * @param expr the expression
+	 * @return the temporary, which replaces the expression
+	 */
+	public NodeFact hoist(NodeExpr expr) {
+		NodeFactInvariant fact=new NodeFactInvariant(expr);
+		invariants.add(fact);
+		return fact;
+	}
+
+	/**
+	 * Strength-reduces a product "i*k", or "k*i",
+	 * if i is an induction variable and the product can be kept exactly.
+	 * @param id the variable i
+	 * @param k the constant k
+	 * @param product the product, evaluated when it can't be kept
+	 * @return the running product, which replaces it, or null
+	 */
+	public NodeFact reduce(NodeFactId id, double k, NodeTerm product) {
+		NodeAssnIdOpNum update=updates.get(id.slot());
+		if (update==null)
+			return null;
+		double c=update.step();
+		double step=k*c;
+		if (!NodeFactInduction.exact(k) || !NodeFactInduction.exact(c)
+		    || !NodeFactInduction.exact(step) || step==0)
+			return null;
+		NodeFactInduction fact=new NodeFactInduction(id,k,step,product);
+		products.computeIfAbsent(id.slot(),s -> new ArrayList<NodeFactInduction>()).add(fact);
+		return fact;
+	}
+
+	/**
+	 * Gets the replacement of an induction variable's update,
+	 * which also steps the products reduced with it.
+	 * @param assn the update
+	 * @param slot the slot of the variable
+	 * @return the replacement, or assn if the variable isn't an induction variable
+	 */
+	public NodeAssn reduced(NodeAssnIdOpNum assn, int slot) {
+		if (updates.get(slot)!=assn)
+			return assn;
+		// an update an inner loop has already replaced steps this loop's products too
+		NodeAssnInduction update=assn instanceof NodeAssnInduction ? (NodeAssnInduction)assn
+		                                                           : new NodeAssnInduction(assn);
+		reduced.put(slot,update);
+		return update;
+	}
+
+	/**
+	 * Gets the temporaries, to be computed when the loop is entered.
+	 * @return the temporaries
+	 */
+	public NodeFactInvariant[] invariants() {
+		return invariants.toArray(new NodeFactInvariant[0]);
+	}
+
+	/**
+	 * Gets the running products, to be started when the loop is entered,
+	 * and hands each update the products it steps.
+	 * @return the products
+	 */
+	public NodeFactInduction[] inductions() {
+		List<NodeFactInduction> all=new ArrayList<NodeFactInduction>();
+		for (Map.Entry<Integer,List<NodeFactInduction>> e: products.entrySet()) {
+			NodeAssnInduction update=reduced.get(e.getKey());
+			if (update!=null) {
+				update.steps(e.getValue().toArray(new NodeFactInduction[0]));
+				all.addAll(e.getValue());
+			}
+		}
+		return all.toArray(new NodeFactInduction[0]);
+	}
+
+}
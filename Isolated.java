@@ -0,0 +1,133 @@
+/**
+ * This class runs programs concurrently, each isolated in its own environment,
+ * so independent programs can use every core.
+ * Each program is scanned, parsed, folded, resolved, and evaluated
+ * on its own thread: a virtual thread, if the JVM has them,
+ * or else a thread from a pool with one per core.
+ * A program's wr output, and its error messages, are collected in buffers,
+ * and printed, once it is done, in the order the programs were submitted.
+ * Then its variables are merged into the shared environment,
+ * and its C code is generated, also in order,
+ * so the C file is the same as if the programs had run one after another.
+ * Programs share standard input, so rd reads values
+ * in whatever order the programs reach it.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Isolated {
+
+	/**
+	 * What a program left behind: its tree, its environment,
+	 * and its buffered output and error messages.
+	 */
+	private static class Result {
+		Node node;			// null if it couldn't be parsed, or none of it can run
+		Environment env;
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		StringBuilder err=new StringBuilder();
+		boolean done=false;		// whether it ran without error
+	}
+
+	private final ExecutorService pool=executor();
+	private final List<Future<Result>> results=new ArrayList<Future<Result>>();
+
+	/**
+	 * Makes an executor that runs each task on a new virtual thread,
+	 * found reflectively, since virtual threads are not in every JVM.
+	 * @return the executor, or null if the JVM has no virtual threads
+	 */
+	public static ExecutorService virtualThreads() {
+		try {
+			return (ExecutorService)Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Makes an executor of virtual threads, or else a pool with a thread per core.
+	 * @return the executor
+	 */
+	private static ExecutorService executor() {
+		ExecutorService pool=virtualThreads();
+		if (pool!=null)
+			return pool;
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+			r -> {
+				Thread t=new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+	}
+
+	/**
+	 * Starts running a program.
+	 * @param prog the program, or the name of its file
+	 * @param file whether prog is a file name (see Source)
+	 * @param cache the cache of parsed programs, or null
+	 * @param jvm whether to run the program as JVM bytecode (see Jit)
+	 * @param vm whether to run the program on the bytecode VM (see Vm)
+	 * @param dis whether to disassemble the program's VM code
+	 */
+	public void submit(String prog, boolean file, AstCache cache,
+	                   boolean jvm, boolean vm, boolean dis) {
+		results.add(pool.submit(() -> {
+			Result r=new Result();
+			r.env=new Environment();
+			OutputSink sink=new OutputSink(r.out);
+			r.env.sink(sink);
+			try {
+				CharSequence text=file ? Source.open(prog) : prog;
+				Node node=Main.parse(new Parser(),text,cache,r.err);
+				node.resolve(r.env);
+				r.node=node;
+				// its environment starts empty, so nothing before it is known
+				r.node=Main.run(node,r.env,new Constants(),jvm,vm,dis,r.err);
+				r.done=true;
+			} catch (Exception e) {
+				r.err.append(e).append(System.lineSeparator());
+			} finally {
+				sink.flush();
+			}
+			return r;
+		}));
+	}
+
+	/**
+	 * Waits for the programs, in the order they were submitted,
+	 * and prints their output and error messages.
+	 * Then merges their variables into the shared environment,
+	 * and generates their C code.
+	 * @param env the shared environment
+	 * @param code the C code generator
+	 */
+	public void finish(Environment env, Code code) {
+		NodeWr.sink().flush();
+		for (Future<Result> f: results) {
+			Result r;
+			try {
+				r=f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				System.err.println(e.getCause());
+				continue;
+			}
+			System.out.write(r.out.toByteArray(),0,r.out.size());
+			System.out.flush();
+			System.err.print(r.err);
+			if (r.node!=null)
+				env.merge(r.env);
+			if (r.done && r.node!=null)
+				code.add(r.node);
+		}
+		results.clear();
+		pool.shutdown();
+	}
+
+}
@@ -0,0 +1,558 @@
+/**
+ * This class is an execution engine beside eval() and code().
+ * It compiles a parsed program to JVM bytecode for a generated class,
+ * loads that class as a hidden class, and runs it.
+ * The generated class has a single method:
+ *     static void run(double[] vars, Environment env)
+ * in which while and if statements are real loops and branches,
+ * and each variable is an element of the environment's frame.
+ * Each kind of node emits its own bytecode, through jit().
+ */
+
+import java.lang.invoke.*;
+import java.util.*;
+
+public class Jit {
+
+	// opcodes used by the nodes
+	public static final int DADD=0x63;
+	public static final int DSUB=0x67;
+	public static final int DMUL=0x6b;
+	public static final int DDIV=0x6f;
+	public static final int DNEG=0x77;
+	public static final int DCMPL=0x97;
+	public static final int DCMPG=0x98;
+	public static final int IFEQ=0x99;
+	public static final int IFNE=0x9a;
+	public static final int IFLT=0x9b;
+	public static final int IFGE=0x9c;
+	public static final int IFGT=0x9d;
+	public static final int IFLE=0x9e;
+
+	// opcodes used only here
+	private static final int ICONST_0=0x03;
+	private static final int DCONST_0=0x0e;
+	private static final int DCONST_1=0x0f;
+	private static final int BIPUSH=0x10;
+	private static final int SIPUSH=0x11;
+	private static final int LDC_W=0x13;
+	private static final int LDC2_W=0x14;
+	private static final int ALOAD_0=0x2a;
+	private static final int ALOAD_1=0x2b;
+	private static final int ALOAD_2=0x2c;
+	private static final int DALOAD=0x31;
+	private static final int BALOAD=0x33;
+	private static final int ASTORE_2=0x4d;
+	private static final int DASTORE=0x52;
+	private static final int BASTORE=0x54;
+	private static final int POP2=0x58;
+	private static final int GOTO=0xa7;
+	private static final int RETURN=0xb1;
+	private static final int INVOKEVIRTUAL=0xb6;
+	private static final int INVOKESTATIC=0xb8;
+
+	// locals of run(): the frame, the environment, and its defined flags
+	private static final String[] LOCALS={ "[D", "LEnvironment;", "[Z" };
+
+	private static final String RUN="([DLEnvironment;)V";
+
+	/**
+	 * A branch target.
+	 * The operand stack at a label is recorded when it is
+	 * first jumped to or bound, for the StackMapTable.
+	 */
+	public static class Label {
+		private int at=-1;
+		private List<Integer> uses=new ArrayList<Integer>();
+		private List<String> stack=null;
+	}
+
+	private ConstantPool pool=new ConstantPool();
+	private byte[] code=new byte[256];
+	private int len=0;
+	private List<String> stack=new ArrayList<String>();
+	private int depth=0;
+	private int maxDepth=0;
+	private List<Label> labels=new ArrayList<Label>();
+
+	/**
+	 * Compiles and runs a program against an environment.
+	 * The program must already be resolved against env.
+	 * A program too large for one JVM method is interpreted instead.
+	 * @param node the root of the parsed program
+	 * @param env the environment containing variable values
+	 * @throws EvalException if evaluation fails
+	 */
+	public static void run(Node node, Environment env) throws EvalException {
+		MethodHandle run=compile(node);
+		if (run==null) {
+			node.eval(env);
+			return;
+		}
+		try {
+			run.invokeExact(env.values(),env);
+		} catch (EvalException|RuntimeException|Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Compiles a program to a hidden class.
+	 * @param node the root of the parsed program
+	 * @return a handle to the generated run() method,
+	 *         or null if the program is too large for one method
+	 * @throws EvalException if the program cannot be loaded
+	 */
+	public static MethodHandle compile(Node node) throws EvalException {
+		Jit jit=new Jit();
+		byte[] bytes=jit.assemble(node);
+		if (bytes==null)
+			return null;
+		try {
+			MethodHandles.Lookup lookup=
+				MethodHandles.lookup().defineHiddenClass(bytes,true);
+			return lookup.findStatic(lookup.lookupClass(),"run",
+				MethodType.methodType(void.class,double[].class,Environment.class));
+		} catch (ReflectiveOperationException|LinkageError e) {
+			throw new EvalException(0,"cannot load compiled program: "+e);
+		}
+	}
+
+	// emitters for the nodes
+
+	/**
+	 * Pushes a double constant.
+	 * @param d the constant
+	 */
+	public void num(double d) {
+		if (Double.doubleToRawLongBits(d)==0)
+			u1(DCONST_0);
+		else if (d==1.0)
+			u1(DCONST_1);
+		else {
+			u1(LDC2_W);
+			u2(pool.dbl(d));
+		}
+		push("D");
+	}
+
+	/**
+	 * Pushes the value of a variable,
+	 * throwing an EvalException if it is undefined.
+	 * @param pos the position of the variable in the source code
+	 * @param slot the slot of the variable
+	 */
+	public void load(int pos, int slot) {
+		Label ok=label();
+		u1(ALOAD_2);
+		push("[Z");
+		integer(slot);
+		u1(BALOAD);
+		pop(2);
+		push("I");
+		jump(IFNE,ok);
+		// the defined check failed, so let the environment throw
+		u1(ALOAD_1);
+		push("LEnvironment;");
+		integer(pos);
+		integer(slot);
+		invoke(INVOKEVIRTUAL,"Environment","get","(II)D",3);
+		u1(POP2);
+		pop(1);
+		bind(ok);
+		load(slot);
+	}
+
+	/**
+	 * Pushes the value of a variable that is certainly defined,
+	 * without checking it.
+	 * @param slot the slot of the variable
+	 */
+	public void load(int slot) {
+		element(slot);
+		u1(DALOAD);
+		pop(2);
+		push("D");
+	}
+
+	/**
+	 * Pushes the frame and a slot in it,
+	 * in preparation for store().
+	 * @param slot the slot of the variable
+	 */
+	public void element(int slot) {
+		u1(ALOAD_0);
+		push("[D");
+		integer(slot);
+	}
+
+	/**
+	 * Pops a value, and the frame and slot pushed by element(),
+	 * and stores the value into the variable.
+	 * @param slot the slot of the variable
+	 */
+	public void store(int slot) {
+		u1(DASTORE);
+		pop(3);
+		u1(ALOAD_2);
+		push("[Z");
+		integer(slot);
+		integer(1);
+		u1(BASTORE);
+		pop(3);
+	}
+
+	/**
+	 * Pushes a value read from standard input.
+	 * @param pos the position of the statement in the source code
+	 */
+	public void read(int pos) {
+		integer(pos);
+		u1(ALOAD_1);
+		push("LEnvironment;");
+		invoke(INVOKESTATIC,"NodeRd","read","(ILEnvironment;)D",2);
+	}
+
+	/**
+	 * Pops a value and writes it to the environment's sink.
+	 */
+	public void write() {
+		u1(ALOAD_1);
+		push("LEnvironment;");
+		invoke(INVOKESTATIC,"NodeWr","write","(DLEnvironment;)V",2);
+	}
+
+	/**
+	 * Emits an arithmetic operator, which pops one or two doubles,
+	 * and pushes the result.
+	 * @param op the opcode (e.g., DADD)
+	 */
+	public void op(int op) {
+		u1(op);
+		if (op!=DNEG)
+			pop(1);
+	}
+
+	/**
+	 * Pops two doubles, compares them,
+	 * and jumps if the comparison has the given outcome.
+	 * @param cmp DCMPL or DCMPG, which determines the outcome for NaN
+	 * @param ifop the conditional jump opcode (e.g., IFGE)
+	 * @param target the label to jump to
+	 */
+	public void compare(int cmp, int ifop, Label target) {
+		u1(cmp);
+		pop(2);
+		push("I");
+		jump(ifop,target);
+	}
+
+	/**
+	 * Creates a new, unbound label.
+	 * @return the label
+	 */
+	public Label label() {
+		Label l=new Label();
+		labels.add(l);
+		return l;
+	}
+
+	/**
+	 * Binds a label to the current position in the code.
+	 * @param l the label
+	 */
+	public void bind(Label l) {
+		l.at=len;
+		if (l.stack==null)
+			l.stack=new ArrayList<String>(stack);
+		else
+			setStack(l.stack);
+	}
+
+	/**
+	 * Jumps unconditionally to a label.
+	 * @param l the label
+	 */
+	public void jump(Label l) {
+		jump(GOTO,l);
+	}
+
+	// assembler internals
+
+	private void jump(int op, Label l) {
+		int at=len;
+		u1(op);
+		if (op!=GOTO)
+			pop(1);
+		if (l.stack==null)
+			l.stack=new ArrayList<String>(stack);
+		l.uses.add(at);
+		u2(0);
+	}
+
+	private void integer(int i) {
+		if (i>=-1 && i<=5)
+			u1(ICONST_0+i);
+		else if (i>=Byte.MIN_VALUE && i<=Byte.MAX_VALUE) {
+			u1(BIPUSH);
+			u1(i);
+		} else if (i>=Short.MIN_VALUE && i<=Short.MAX_VALUE) {
+			u1(SIPUSH);
+			u2(i);
+		} else {
+			u1(LDC_W);
+			u2(pool.integer(i));
+		}
+		push("I");
+	}
+
+	private void invoke(int op, String owner, String name, String type, int args) {
+		u1(op);
+		u2(pool.method(owner,name,type));
+		pop(args);
+		String result=type.substring(type.indexOf(')')+1);
+		if (!result.equals("V"))
+			push(result);
+	}
+
+	private void push(String type) {
+		stack.add(type);
+		depth+=type.equals("D") ? 2 : 1;
+		maxDepth=Math.max(maxDepth,depth);
+	}
+
+	private void pop(int n) {
+		while (n-->0)
+			depth-=stack.remove(stack.size()-1).equals("D") ? 2 : 1;
+	}
+
+	private void setStack(List<String> s) {
+		pop(stack.size());
+		for (String type: s)
+			push(type);
+	}
+
+	private void u1(int b) {
+		if (len==code.length)
+			code=Arrays.copyOf(code,len*2);
+		code[len++]=(byte)b;
+	}
+
+	private void u2(int s) {
+		u1(s>>8);
+		u1(s);
+	}
+
+	/**
+	 * Generates the bytecode of run() for a program,
+	 * and wraps it in a class file.
+	 * @param node the root of the parsed program
+	 * @return the class file, or null if the program is too large for one method
+	 */
+	private byte[] assemble(Node node) {
+		u1(ALOAD_1);
+		push("LEnvironment;");
+		invoke(INVOKEVIRTUAL,"Environment","defined","()[Z",1);
+		u1(ASTORE_2);
+		pop(1);
+		node.jit(this);
+		u1(RETURN);
+		if (len>Short.MAX_VALUE)
+			return null;
+
+		// patch jumps, and collect the targets that need frames
+		TreeMap<Integer,Label> frames=new TreeMap<Integer,Label>();
+		for (Label l: labels)
+			if (!l.uses.isEmpty()) {
+				for (int at: l.uses) {
+					int off=l.at-at;
+					code[at+1]=(byte)(off>>8);
+					code[at+2]=(byte)off;
+				}
+				frames.put(l.at,l);
+			}
+
+		Bytes map=new Bytes();
+		map.u2(frames.size());
+		int last=-1;
+		for (Label l: frames.values()) {
+			map.u1(255); // full_frame
+			map.u2(l.at-last-1);
+			last=l.at;
+			map.u2(LOCALS.length);
+			for (String type: LOCALS)
+				verification(map,type);
+			map.u2(l.stack.size());
+			for (String type: l.stack)
+				verification(map,type);
+		}
+
+		Bytes attr=new Bytes();
+		attr.u2(maxDepth);
+		attr.u2(LOCALS.length);
+		attr.u4(len);
+		attr.bytes(code,len);
+		attr.u2(0); // exception table
+		attr.u2(1);
+		attr.u2(pool.utf8("StackMapTable"));
+		attr.u4(map.len);
+		attr.bytes(map.buf,map.len);
+
+		Bytes method=new Bytes();
+		method.u2(0x0009); // public static
+		method.u2(pool.utf8("run"));
+		method.u2(pool.utf8(RUN));
+		method.u2(1);
+		method.u2(pool.utf8("Code"));
+		method.u4(attr.len);
+		method.bytes(attr.buf,attr.len);
+
+		int thisClass=pool.cls("JitProgram");
+		int superClass=pool.cls("java/lang/Object");
+
+		Bytes cf=new Bytes();
+		cf.u4(0xcafebabe);
+		cf.u2(0);
+		cf.u2(52);
+		cf.u2(pool.count);
+		cf.bytes(pool.bytes.buf,pool.bytes.len);
+		cf.u2(0x0031); // public final super
+		cf.u2(thisClass);
+		cf.u2(superClass);
+		cf.u2(0); // interfaces
+		cf.u2(0); // fields
+		cf.u2(1); // methods
+		cf.bytes(method.buf,method.len);
+		cf.u2(0); // attributes
+		return Arrays.copyOf(cf.buf,cf.len);
+	}
+
+	private void verification(Bytes b, String type) {
+		switch (type) {
+			case "I": b.u1(1); break;
+			case "D": b.u1(3); break;
+			default:
+				b.u1(7);
+				b.u2(pool.cls(type.startsWith("L")
+					? type.substring(1,type.length()-1)
+					: type));
+		}
+	}
+
+	/**
+	 * A growable big-endian byte buffer.
+	 */
+	private static class Bytes {
+		private byte[] buf=new byte[64];
+		private int len=0;
+
+		void u1(int b) {
+			if (len==buf.length)
+				buf=Arrays.copyOf(buf,len*2);
+			buf[len++]=(byte)b;
+		}
+
+		void u2(int s) {
+			u1(s>>8);
+			u1(s);
+		}
+
+		void u4(int i) {
+			u2(i>>16);
+			u2(i);
+		}
+
+		void bytes(byte[] b, int n) {
+			for (int i=0; i<n; i++)
+				u1(b[i]);
+		}
+	}
+
+	/**
+	 * The constant pool of the generated class.
+	 * Each constant is added once.
+	 */
+	private static class ConstantPool {
+		private Bytes bytes=new Bytes();
+		private Map<String,Integer> index=new HashMap<String,Integer>();
+		private int count=1;
+
+		private int add(String key, int size) {
+			Integer i=index.get(key);
+			if (i!=null)
+				return i;
+			index.put(key,count);
+			count+=size;
+			return count-size;
+		}
+
+		int utf8(String s) {
+			int n=count;
+			int i=add("U"+s,1);
+			if (i==n) {
+				bytes.u1(1);
+				bytes.u2(s.length());
+				for (char c: s.toCharArray())
+					bytes.u1(c);
+			}
+			return i;
+		}
+
+		int integer(int v) {
+			int n=count;
+			int i=add("I"+v,1);
+			if (i==n) {
+				bytes.u1(3);
+				bytes.u4(v);
+			}
+			return i;
+		}
+
+		int dbl(double d) {
+			long bits=Double.doubleToRawLongBits(d);
+			int n=count;
+			int i=add("D"+bits,2);
+			if (i==n) {
+				bytes.u1(6);
+				bytes.u4((int)(bits>>32));
+				bytes.u4((int)bits);
+			}
+			return i;
+		}
+
+		int cls(String name) {
+			int u=utf8(name);
+			int n=count;
+			int i=add("C"+name,1);
+			if (i==n) {
+				bytes.u1(7);
+				bytes.u2(u);
+			}
+			return i;
+		}
+
+		int method(String owner, String name, String type) {
+			int c=cls(owner);
+			int nm=utf8(name);
+			int t=utf8(type);
+			int n=count;
+			int nt=add("N"+name+type,1);
+			if (nt==n) {
+				bytes.u1(12);
+				bytes.u2(nm);
+				bytes.u2(t);
+			}
+			n=count;
+			int i=add("M"+owner+"."+name+type,1);
+			if (i==n) {
+				bytes.u1(10);
+				bytes.u2(c);
+				bytes.u2(nt);
+			}
+			return i;
+		}
+	}
+
+}
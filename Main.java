@@ -1,31 +1,293 @@
 /**
  * This is the main class for the interpreter/compiler.
  * Each command-line argument is a complete program,
- * which is scanned, parsed, and evaluated.
+ * which is scanned, parsed, folded, resolved, and evaluated.
  * All evaluations share the same environment,
- * so they can share variables.
+ * so they can share variables: resolution maps each
+ * variable name to the same slot in every program.
+ * An argument starting with '-' cannot be a program,
+ * so it is an option instead:
+ *     -f    read the next program from a file (see Source),
+ *           rather than from the argument itself
+ *     -cache  cache parsed programs in the directory named by
+ *           the next argument (see AstCache)
+ *     -jvm  run programs as generated JVM bytecode (see Jit)
+ *     -vm   run programs on the bytecode VM (see Vm);
+ *           a program runs on one engine, so the last of -jvm and -vm wins
+ *     -dis  disassemble the VM code of each program to stderr
+ *     -isolate  run each of the following programs concurrently,
+ *           in its own environment, printing their output in order
+ *           (see Isolated)
+ *     -parallel  run each of the following programs concurrently
+ *           with those it doesn't share variables or input with,
+ *           printing their output in order (see Parallel)
+ *     -native  compile all the programs to C, then to an executable,
+ *           with gcc, and run that (see Native);
+ *           without gcc, they are interpreted instead
+ *     -server  serve requests, from Client, on the Unix domain socket
+ *           named by the next argument, rather than running programs
+ *           (see Server)
+ * If the Profile environment variable is set, the programs
+ * are profiled, and reports written, when they are done (see Profiler).
+ * If the Metrics environment variable is set, what they do is counted,
+ * and published with JMX (see Metrics).
  */
 
+import java.io.*;
+import java.util.*;
+
 public class Main {
 
 	/**
 	 * Main method that processes command-line arguments as programs.
 	 * Each program is parsed, evaluated, and compiled to C code.
-	 * @param args array of program strings to process
+	 * @param args array of options and program strings to process
 	 */
 	public static void main(String[] args) {
+		Metrics.register();
 		Parser parser=new Parser();
-		Environment env=new Environment();
-		String code="";
-		for (String prog: args)
+		Profiler profiler=new Profiler();
+		Environment env=profiler.environment();
+		Metrics.opened(env);
+		boolean jvm=false;
+		boolean vm=false;
+		boolean dis=false;
+		AstCache cache=null;
+		boolean nat=false;
+		Isolated isolated=null;
+		Parallel parallel=null;
+		List<Node> deferred=new ArrayList<Node>();
+		Code code=new Code();
+		// known at the end of the programs so far
+		Constants known=new Constants();
+		for (int i=0; i<args.length; i++) {
+			String prog=args[i];
+			// the engines are exclusive, so the last one given wins
+			if (prog.equals("-jvm")) {
+				jvm=true;
+				vm=false;
+			} else if (prog.equals("-vm")) {
+				vm=true;
+				jvm=false;
+			}
+			else if (prog.equals("-dis"))
+				dis=true;
+			else if (prog.equals("-native"))
+				nat=true;
+			else if (prog.equals("-isolate")) {
+				// run the parallel programs before those that follow
+				if (parallel!=null)
+					parallel.finish(env,known,code);
+				parallel=null;
+				if (isolated==null)
+					isolated=new Isolated();
+			} else if (prog.equals("-parallel")) {
+				if (isolated!=null) {
+					isolated.finish(env,code);
+					// its programs may have left any value in any variable
+					known=new Constants();
+				}
+				isolated=null;
+				if (parallel==null)
+					parallel=new Parallel();
+			}
+			else if ((prog.equals("-f") || prog.equals("-cache") || prog.equals("-server"))
+			         && i+1==args.length)
+				System.err.println("missing argument for "+prog);
+			else if (prog.equals("-server"))
+				try {
+					new Server(args[++i],cache).serve();
+				} catch (IOException e) {
+					System.err.println(e.getMessage());
+					return;
+				}
+			else if (prog.equals("-cache"))
+				try {
+					cache=new AstCache(args[++i],AstCache.LIMIT);
+				} catch (IOException e) {
+					System.err.println(e);
+				}
+			else if (prog.startsWith("-") && !prog.equals("-f"))
+				System.err.println("unknown option: "+prog);
+			else if (isolated!=null && !nat) {
+				boolean file=prog.equals("-f");
+				isolated.submit(file ? args[++i] : prog,file,cache,jvm,vm,dis);
+			} else if (parallel!=null && !nat) {
+				boolean file=prog.equals("-f");
+				parallel.add(file ? args[++i] : prog,file,cache,jvm,vm,dis);
+			}
+			else
+				try {
+					CharSequence text=prog.equals("-f") ? Source.open(args[++i]) : prog;
+					Node node=parse(parser,text,cache,System.err);
+					node.resolve(env);
+					if (nat) {
+						// run with the others, once all are resolved,
+						// by an executable that may be interpreted instead,
+						// so what an earlier one leaves may not be known
+						node=node.propagate(new Constants());
+						if (node!=null) {
+							deferred.add(node);
+							code.add(node);
+						}
+						continue;
+					}
+					node=profiler.profile(node,text);
+					// a program that fails may have left any value in what it writes
+					Constants constants=known.copy();
+					known.forget(node);
+					node=run(node,env,constants,jvm,vm,dis,System.err);
+					known=constants;
+					if (node!=null)
+						code.add(node);
+				} catch (Exception e) {
+					NodeWr.sink().flush();
+					System.err.println(e);
+				} finally {
+					NodeWr.sink().flush();
+				}
+		}
+		if (isolated!=null)
+			isolated.finish(env,code);
+		if (parallel!=null)
+			parallel.finish(env,known,code);
+		if (!deferred.isEmpty())
+			runNative(deferred,env,cache);
+		code.close(env,nat);
+		profiler.close(env);
+	}
+
+	/**
+	 * Parses and folds a program, or gets it from the cache.
+	 * @param parser the parser
+	 * @param text the program
+	 * @param cache the cache of parsed programs, or null
+	 * @param err where to report the program's warnings (see Scanner),
+	 *            and a failure to cache it
+	 * @return the root of the program
+	 * @throws SyntaxException if the program can't be parsed
+	 * @throws IOException if err can't be appended to
+	 */
+	public static Node parse(Parser parser, CharSequence text, AstCache cache, Appendable err)
+			throws SyntaxException, IOException {
+		long start=System.nanoTime();
+		String key=cache==null ? null : AstCache.key(text);
+		Node node=key==null ? null : cache.get(key);
+		if (node==null) {
+			try {
+				node=parser.parse(text).fold();
+			} catch (SyntaxException e) {
+				Metrics.failed(e);
+				throw e;
+			} finally {
+				for (String w: parser.warnings())
+					err.append(w).append(System.lineSeparator());
+			}
+			if (key!=null && parser.clean())
+				try {
+					cache.put(key,node);
+				} catch (IOException e) {
+					err.append("cache: "+e).append(System.lineSeparator());
+				}
+		}
+		Metrics.parsed(System.nanoTime()-start);
+		return node;
+	}
+
+	/**
+	 * Runs a resolved program on the chosen engines.
+	 * Statements that can never run are pruned first (see Constants),
+	 * so no engine, nor its C code, has them, and a program none of whose
+	 * statements can run isn't run at all,
+	 * and variables are read without a check where they are certainly defined,
+	 * given those the environment has defined already (see Definite).
+	 * The tree-walking evaluator runs it with its loops optimized (see Hoist),
+	 * and the statements it executes are counted, if Metrics are enabled.
+	 * @param node the root of the program
+	 * @param env the environment the program was resolved in
+	 * @param constants the variables known to hold constants when the program
+	 *                  starts, which are updated to those known when it ends
+	 * @param jvm whether to run the program as JVM bytecode (see Jit),
+	 *            unless vm is set
+	 * @param vm whether to run the program on the bytecode VM (see Vm)
+	 * @param dis whether to disassemble the program's VM code
+	 * @param err where to disassemble it to
+	 * @return the program as it was run, for its C code,
+	 *         or null if none of it can run
+	 * @throws EvalException if evaluation fails
+	 * @throws IOException if err can't be appended to
+	 */
+	public static Node run(Node node, Environment env, Constants constants,
+			boolean jvm, boolean vm, boolean dis, Appendable err)
+			throws EvalException, IOException {
+		EvalEvent event=new EvalEvent();
+		event.begin();
+		long start=System.nanoTime();
+		long statements=env.statements();
+		try {
+			node=node.propagate(constants);
+			if (node==null)
+				return null;
+			node.definite(new Definite(env));
+			if (vm || dis) {
+				Vm v=new Vm(node);
+				if (dis)
+					err.append(v.disassemble(env));
+				if (vm)
+					v.run(env);
+			}
+			// a program runs on one engine, so its side effects happen once
+			if (!vm) {
+				if (jvm)
+					Jit.run(node,env);
+				else {
+					node.hoist(null);
+					node.eval(env);
+				}
+			}
+			return node;
+		} catch (EvalException e) {
+			Metrics.failed(e);
+			event.error=e.toString();
+			throw e;
+		} finally {
+			Metrics.ran(System.nanoTime()-start);
+			Metrics.executed(env.statements()-statements);
+			if (event.shouldCommit()) {
+				event.engine=vm ? "vm" : jvm ? "jvm" : "eval";
+				event.variables=env.size();
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Runs programs natively, or interprets them if they can't be compiled.
+	 * @param nodes the programs, resolved but not evaluated
+	 * @param env the environment the programs were resolved in
+	 * @param cache the cache of parsed programs, whose directory
+	 *              executables are cached in too, or null
+	 */
+	private static void runNative(List<Node> nodes, Environment env, AstCache cache) {
+		int status=-1;
+		try {
+			Native n=new Native(cache!=null ? cache.dir() : Native.defaultDir());
+			status=n.run(nodes,env);
+		} catch (IOException e) {
+			System.err.println("native: "+e.getMessage());
+		}
+		if (status>=0)
+			return;
+		System.err.println("native: interpreting instead");
+		for (Node node: nodes)
 			try {
-				Node node=parser.parse(prog);
 				node.eval(env);
-				code+=node.code();
 			} catch (Exception e) {
+				NodeWr.sink().flush();
 				System.err.println(e);
+			} finally {
+				NodeWr.sink().flush();
 			}
-		new Code(code,env);
 	}
 
 }
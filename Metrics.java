@@ -0,0 +1,160 @@
+/**
+ * This class counts what the interpreter does, for monitoring,
+ * and publishes the counts as a JMX MBean, named translator:type=Metrics
+ * (see MetricsMBean), if the Metrics environment variable is set.
+ * Programs are counted, and timed, as they are parsed and run
+ * (see Main.parse() and Main.run()), by Main, Isolated, Parallel, and Server.
+ * Counters may be updated by several threads at once, so they are atomic.
+ * Unless the MBean is registered, nothing is counted.
+ */
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+public class Metrics implements MetricsMBean {
+
+	// the number of buckets in a latency histogram
+	private static final int BUCKETS=32;
+
+	// whether statements are counted as they are executed (see NodeStmt.eval()),
+	// which is decided once, so that, if not, checking costs nothing
+	public static final boolean STATEMENTS=System.getenv("Metrics")!=null;
+
+	private static final Metrics metrics=new Metrics();
+	private static volatile boolean enabled=false;
+
+	private final LongAdder programs=new LongAdder();
+	private final LongAdder statements=new LongAdder();
+	private final LongAdder syntaxErrors=new LongAdder();
+	private final LongAdder evalErrors=new LongAdder();
+	private final AtomicLongArray parseLatency=new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray evalLatency=new AtomicLongArray(BUCKETS);
+	private final Set<Environment> environments=ConcurrentHashMap.newKeySet();
+
+	private Metrics() {}
+
+	/**
+	 * Registers the MBean, if the Metrics environment variable is set,
+	 * and it isn't registered already.
+	 */
+	public static synchronized void register() {
+		if (enabled || System.getenv("Metrics")==null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer()
+				.registerMBean(metrics,new ObjectName("translator:type=Metrics"));
+			enabled=true;
+		} catch (JMException e) {
+			System.err.println("metrics: "+e);
+		}
+	}
+
+	/**
+	 * Checks whether anything is counted.
+	 * @return true if the MBean is registered
+	 */
+	public static boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * Counts a program parsed, or gotten from the cache.
+	 * @param nanos the time it took
+	 */
+	public static void parsed(long nanos) {
+		if (enabled)
+			record(metrics.parseLatency,nanos);
+	}
+
+	/**
+	 * Counts a program run.
+	 * @param nanos the time it took
+	 */
+	public static void ran(long nanos) {
+		if (enabled) {
+			metrics.programs.increment();
+			record(metrics.evalLatency,nanos);
+		}
+	}
+
+	/**
+	 * Counts statements executed.
+	 * @param n the number of statements
+	 */
+	public static void executed(long n) {
+		if (enabled)
+			metrics.statements.add(n);
+	}
+
+	/**
+	 * Counts an error, by its type.
+	 * @param e the error
+	 */
+	public static void failed(Exception e) {
+		if (!enabled)
+			return;
+		if (e instanceof SyntaxException)
+			metrics.syntaxErrors.increment();
+		else if (e instanceof EvalException)
+			metrics.evalErrors.increment();
+	}
+
+	/**
+	 * Adds an environment to those whose variables are live.
+	 * @param env the environment
+	 */
+	public static void opened(Environment env) {
+		if (enabled)
+			metrics.environments.add(env);
+	}
+
+	/**
+	 * Removes an environment, which is no longer in use.
+	 * @param env the environment
+	 */
+	public static void closed(Environment env) {
+		metrics.environments.remove(env);
+	}
+
+	private static void record(AtomicLongArray histogram, long nanos) {
+		long micros=nanos/1000;
+		int bucket=Math.min(64-Long.numberOfLeadingZeros(micros),BUCKETS-1);
+		histogram.incrementAndGet(bucket);
+	}
+
+	private static long[] snapshot(AtomicLongArray histogram) {
+		long[] counts=new long[histogram.length()];
+		for (int i=0; i<counts.length; i++)
+			counts[i]=histogram.get(i);
+		return counts;
+	}
+
+	public long getProgramsRun() { return programs.sum(); }
+	public long getStatementsExecuted() { return statements.sum(); }
+	public long getSyntaxErrors() { return syntaxErrors.sum(); }
+	public long getEvalErrors() { return evalErrors.sum(); }
+	public long[] getParseLatency() { return snapshot(parseLatency); }
+	public long[] getEvalLatency() { return snapshot(evalLatency); }
+
+	public int getVariablesLive() {
+		int n=0;
+		for (Environment env: environments)
+			n+=env.size();
+		return n;
+	}
+
+	public void reset() {
+		programs.reset();
+		statements.reset();
+		syntaxErrors.reset();
+		evalErrors.reset();
+		for (int i=0; i<BUCKETS; i++) {
+			parseLatency.set(i,0);
+			evalLatency.set(i,0);
+		}
+	}
+
+}
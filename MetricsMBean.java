@@ -0,0 +1,63 @@
+/**
+ * This interface is the management interface of Metrics,
+ * as JMX clients (e.g., jconsole) see it.
+ * Latency histograms have a bucket for each power of two microseconds:
+ * bucket 0 counts latencies under 1 us, and bucket i, from 2^(i-1) us
+ * up to 2^i us; the last bucket counts everything longer.
+ */
+
+public interface MetricsMBean {
+
+	/**
+	 * Gets the number of programs run, to their end or to an error.
+	 * @return the count
+	 */
+	long getProgramsRun();
+
+	/**
+	 * Gets the number of statements the tree-walking evaluator executed,
+	 * in programs run by Main, Isolated, Parallel, and Server,
+	 * including those of loops it evaluates without walking them
+	 * (see Accumulation). Programs run with -jvm, -vm, or -native
+	 * aren't counted.
+	 * @return the count
+	 */
+	long getStatementsExecuted();
+
+	/**
+	 * Gets the number of variables resolved in the environments in use.
+	 * @return the count
+	 */
+	int getVariablesLive();
+
+	/**
+	 * Gets the number of programs that couldn't be parsed.
+	 * @return the count of SyntaxExceptions
+	 */
+	long getSyntaxErrors();
+
+	/**
+	 * Gets the number of programs stopped by an evaluation error.
+	 * @return the count of EvalExceptions
+	 */
+	long getEvalErrors();
+
+	/**
+	 * Gets the histogram of the time to parse a program,
+	 * or to get it from the cache.
+	 * @return the count in each bucket
+	 */
+	long[] getParseLatency();
+
+	/**
+	 * Gets the histogram of the time to run a program.
+	 * @return the count in each bucket
+	 */
+	long[] getEvalLatency();
+
+	/**
+	 * Sets every counter and histogram back to zero.
+	 */
+	void reset();
+
+}
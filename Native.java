@@ -0,0 +1,179 @@
+/**
+ * This class is an execution engine that runs programs natively.
+ * The programs' C code (see Code) is compiled with gcc -O2,
+ * and the executable is run with this process's stdin, stdout, and stderr.
+ * Executables are cached in a directory, named by a SHA-256 hash
+ * of the compiler command and the C code,
+ * so the same programs are only compiled once.
+ * The cache is kept under a size limit of its own, apart from that of
+ * the parsed programs it may share its directory with (see AstCache),
+ * by evicting the least recently used executables.
+ * The C code is what the C backend generates, so output is formatted by
+ * printf("%g"), and variables start at zero, rather than being undefined,
+ * unless programs interpreted before these have given them values,
+ * which they start with.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+
+public class Native {
+
+	private static final String[] GCC={ "gcc", "-O2" };
+	private static final String SUFFIX=".exe";
+
+	public static final long LIMIT=64L<<20;		// size limit of the executables, in bytes
+
+	private final Path dir;
+
+	/**
+	 * Opens a cache of executables, creating its directory if need be.
+	 * @param dir the cache directory
+	 * @throws IOException if the directory can't be created
+	 */
+	public Native(String dir) throws IOException {
+		this.dir=Files.createDirectories(Paths.get(dir));
+	}
+
+	/**
+	 * Gets the default cache directory, in the temporary directory.
+	 * @return the directory's name
+	 */
+	public static String defaultDir() {
+		return Paths.get(System.getProperty("java.io.tmpdir"),"354-native").toString();
+	}
+
+	/**
+	 * Compiles programs, unless they are cached, and runs them.
+	 * @param nodes the programs, resolved but not evaluated
+	 * @param env the environment the programs were resolved in
+	 * @return the exit status of the executable,
+	 *         or -1 if it couldn't be built (e.g., if there's no gcc)
+	 */
+	public int run(List<Node> nodes, Environment env) {
+		Path exe=build(nodes,env);
+		if (exe==null)
+			return -1;
+		NodeWr.sink().flush();
+		try {
+			ProcessBuilder pb=new ProcessBuilder(exe.toString()).inheritIO();
+			// input that programs interpreted before these have buffered,
+			// but not read, is piped to the executable, then the rest
+			boolean piped=NodeRd.reading();
+			if (piped)
+				pb.redirectInput(ProcessBuilder.Redirect.PIPE);
+			Process p=pb.start();
+			if (piped)
+				feed(NodeRd.unread(),p.getOutputStream());
+			return p.waitFor();
+		} catch (IOException e) {
+			System.err.println("native: "+e);
+			return -1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
+	/**
+	 * Copies input to a process, on a daemon thread,
+	 * which stops when the input ends, or the process does.
+	 * @param in the input
+	 * @param out the process's standard input
+	 */
+	private static void feed(InputStream in, OutputStream out) {
+		Thread t=new Thread(() -> {
+			try (out) {
+				in.transferTo(out);
+			} catch (IOException e) {
+				// the process has exited
+			}
+		});
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Finds, or compiles, the executable of some programs.
+	 * @param nodes the programs
+	 * @param env the environment the programs were resolved in
+	 * @return the executable, or null if it couldn't be built
+	 */
+	private Path build(List<Node> nodes, Environment env) {
+		Path c=null;
+		Path tmp=null;
+		try {
+			c=Files.createTempFile(dir,"prog",".c");
+			String fn=c.toString();
+			Code code=new Code(fn.substring(0,fn.length()-2));
+			for (Node node: nodes)
+				code.add(node);
+			// programs interpreted before these left their values in env
+			if (!code.close(env,true,true))
+				return null;
+			Path exe=dir.resolve(key(c)+SUFFIX);
+			if (Files.isExecutable(exe)) {
+				Files.setLastModifiedTime(exe,FileTime.fromMillis(System.currentTimeMillis()));
+				return exe;
+			}
+			tmp=Files.createTempFile(dir,"prog",".tmp");
+			List<String> cmd=new ArrayList<String>(Arrays.asList(GCC));
+			cmd.addAll(Arrays.asList("-o",tmp.toString(),c.toString()));
+			Process gcc=new ProcessBuilder(cmd).redirectErrorStream(true).start();
+			byte[] messages=gcc.getInputStream().readAllBytes();
+			if (gcc.waitFor()!=0) {
+				System.err.write(messages);
+				System.err.println("native: gcc failed");
+				return null;
+			}
+			// make room for the new executable, which is never evicted itself
+			AstCache.evict(dir,"*"+SUFFIX,LIMIT-Files.size(tmp));
+			Files.move(tmp,exe,StandardCopyOption.REPLACE_EXISTING,
+			           StandardCopyOption.ATOMIC_MOVE);
+			return exe;
+		} catch (IOException e) {
+			System.err.println("native: "+e.getMessage());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			try {
+				if (c!=null)
+					Files.deleteIfExists(c);
+				if (tmp!=null)
+					Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				// nothing more can be done
+			}
+		}
+	}
+
+	/**
+	 * Computes the key of a C file: a hash of the compiler command and the file.
+	 * @param c the C file
+	 * @return the key, as hex digits
+	 * @throws IOException if the file can't be read
+	 */
+	private static String key(Path c) throws IOException {
+		MessageDigest md;
+		try {
+			md=MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		md.update(String.join(" ",GCC).getBytes());
+		md.update((byte)0);
+		try (InputStream in=new DigestInputStream(Files.newInputStream(c),md)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		StringBuilder sb=new StringBuilder();
+		for (byte b: md.digest())
+			sb.append(String.format("%02x",b));
+		return sb.toString();
+	}
+
+}
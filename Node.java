@@ -3,6 +3,8 @@
 // Each kind of node can be eval()-uated,
 // and/or code()-generated.
 
+import java.io.*;
+
 public abstract class Node {
 
 	protected int pos=0;
@@ -18,9 +20,114 @@ public abstract class Node {
 	}
 
 	/**
-	 * Generates C code for this node.
+	 * Folds constant subtrees of this node, and its children,
+	 * and applies algebraic simplifications that cannot change a result.
+	 * Nodes are folded in place, where possible.
+	 * @return the folded node, which replaces this one
+	 */
+	public Node fold() { return this; }
+
+	/**
+	 * Resolves the variables of this node, and its children,
+	 * to slots in the environment's frame.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {}
+
+	/**
+	 * Adds the variables that this node, and its children, read and write,
+	 * and whether they use rd or wr, to a program's read/write set.
+	 * The node must have been resolved.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {}
+
+	/**
+	 * Replaces the statements of this node, and of its children,
+	 * by ones that count and time their evaluation (see Profiler).
+	 * The node must have been resolved.
+	 * @param profiler the profiler that keeps the counts
+	 * @return the profiled node, which replaces this one
+	 */
+	public Node profile(Profiler profiler) { return this; }
+
+	/**
+	 * Hoists loop-invariant expressions out of the while loops
+	 * in this node, and its children, and strength-reduces products
+	 * of their induction variables (see Hoist).
+	 * A loop is optimized on its own, and, where it is nested,
+	 * as part of each loop around it.
+	 * The node must have been resolved.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return the optimized node, which replaces this one
+	 */
+	public Node hoist(Hoist hoist) { return this; }
+
+	/**
+	 * Propagates the values of variables known to be constant
+	 * through the statements of this node, and its children,
+	 * and prunes those that can never run:
+	 * an if's branch that isn't taken, and a loop that never iterates
+	 * (see Constants).
+	 * The node must have been resolved.
+	 * @param constants the variables known at this node, which are updated
+	 * @return the node that replaces this one, or null if it can never run
+	 */
+	public Node propagate(Constants constants) { return this; }
+
+	/**
+	 * Finds the variables this node, and its children, read
+	 * where they are certainly defined, so they are read without a check,
+	 * and notes those they define (see Definite).
+	 * The node must have been resolved.
+	 * @param definite the variables defined before this node, which are updated
+	 */
+	public void definite(Definite definite) {}
+
+	/**
+	 * Generates JVM bytecode for this node.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {}
+
+	/**
+	 * Lowers this node into instructions for the bytecode VM.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {}
+
+	/**
+	 * Generates C code for this node, as a String.
 	 * @return C code string representation
 	 */
-	public String code() { return ""; }
+	public String code() {
+		StringBuilder sb=new StringBuilder();
+		try {
+			code(sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);	// a StringBuilder never throws
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates C code for this node, and its children,
+	 * appending it as it goes, in one pass,
+	 * so no node builds a String of its subtree's code.
+	 * @param out where to append the code (e.g., a Writer to the C file)
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {}
+
+	/**
+	 * Writes this node, and its children, in a compact binary form,
+	 * which the node's class reads back with its static load() method
+	 * (see AstCache).
+	 * @param out the stream to write to
+	 * @throws IOException if the node can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		throw new IOException("cannot save() node: "+getClass().getName());
+	}
 
 }
@@ -0,0 +1,40 @@
+/**
+ * NodeAdd represents an addition operator in the parse tree.
+ */
+public class NodeAdd extends NodeAddop {
+
+	/**
+	 * Constructs a new addition operator node.
+	 * @param pos the position in the source code
+	 */
+	public NodeAdd(int pos) {
+		super(pos, "+");
+	}
+
+	/**
+	 * Adds the operands.
+	 * @param o1 the first operand
+	 * @param o2 the second operand
+	 * @return the sum
+	 */
+	public double op(double o1, double o2) {
+		return o1+o2;
+	}
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.op(Jit.DADD);
+	}
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.op(Vm.ADD);
+	}
+
+}
@@ -1,39 +1,76 @@
 /**
  * NodeAddop represents an addition or subtraction operator in the parse tree.
+ * Each operator is a subclass (e.g., NodeAdd or NodeSub),
+ * chosen by the parser, so evaluating one needs no string comparison.
  */
-public class NodeAddop extends Node {
+
+import java.io.*;
+
+public abstract class NodeAddop extends Node {
 
 	private String addop;
 
 	/**
-	 * Constructs a new addition/subtraction operator node.
+	 * Constructs a new operator node.
 	 * @param pos the position in the source code
 	 * @param addop the operator string ("+" or "-")
 	 */
-	public NodeAddop(int pos, String addop) {
+	protected NodeAddop(int pos, String addop) {
 		this.pos=pos;
 		this.addop=addop;
 	}
 
 	/**
-	 * Performs the addition or subtraction operation.
+	 * Performs the operation.
 	 * @param o1 the first operand
 	 * @param o2 the second operand
 	 * @return the result of the operation
-	 * @throws EvalException if the operator is invalid
 	 */
-	public double op(double o1, double o2) throws EvalException {
-		if (addop.equals("+"))
-			return o1+o2;
-		if (addop.equals("-"))
-			return o1-o2;
-		throw new EvalException(pos,"bogus addop: "+addop);
-	}
+	public abstract double op(double o1, double o2);
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public abstract void jit(Jit jit);
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public abstract void lower(Vm vm);
 
 	/**
 	 * Generates C code for the operator.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() { return addop; }
+	public void code(Appendable out) throws IOException { out.append(addop); }
+
+	/**
+	 * Writes the operator, as its position and string.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writePos(pos);
+		out.writeString(addop);
+	}
+
+	/**
+	 * Reads an addition or subtraction operator written by save().
+	 * @param in the stream to read from
+	 * @return the operator
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeAddop load(AstCache.Input in) throws IOException {
+		int pos=in.readPos();
+		String op=in.readString();
+		switch (op) {
+			case "+": return new NodeAdd(pos);
+			case "-": return new NodeSub(pos);
+			default: throw new IOException("bad operator: "+op);
+		}
+	}
 
 }
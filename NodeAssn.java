@@ -2,9 +2,13 @@
  * NodeAssn represents an assignment statement in the parse tree.
  * It assigns the value of an expression to a variable.
  */
+
+import java.io.*;
+
 public class NodeAssn extends Node {
 
 	private String id;
+	protected int slot;
 	private NodeExpr expr;
 
 	/**
@@ -17,6 +21,96 @@ public class NodeAssn extends Node {
 		this.expr = expr;
 	}
 
+	/**
+	 * Constructs a copy of an assignment node.
+	 * @param assn the assignment to copy
+	 */
+	protected NodeAssn(NodeAssn assn) {
+		this.pos = assn.pos;
+		this.id = assn.id;
+		this.slot = assn.slot;
+		this.expr = assn.expr;
+	}
+
+	/**
+	 * Gets the slot of the assigned variable.
+	 * @return the slot
+	 */
+	public int slot() {
+		return slot;
+	}
+
+	/**
+	 * Gets the assigned expression.
+	 * @return the expression
+	 */
+	public NodeExpr expr() {
+		return expr;
+	}
+
+	/**
+	 * Folds the assigned expression.
+	 * @return this node
+	 */
+	public Node fold() {
+		expr.fold();
+		return this;
+	}
+
+	/**
+	 * Resolves the assigned variable, and those of the expression.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		slot = env.slot(id);
+		expr.resolve(env);
+	}
+
+	/**
+	 * Adds the assigned variable, and the expression's variables.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		effects.write(slot);
+		expr.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the expression that need no check,
+	 * and defines the assigned variable.
+	 * @param definite the variables defined before the assignment
+	 */
+	public void definite(Definite definite) {
+		expr.definite(definite);
+		definite.define(slot);
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the assigned expression.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public NodeAssn hoist(Hoist hoist) {
+		expr.hoist(hoist);
+		return this;
+	}
+
+	/**
+	 * Makes the assigned variable known, if the expression is constant,
+	 * or else forgets it.
+	 * @param constants the variables known before the assignment
+	 * @return this node
+	 */
+	public NodeAssn propagate(Constants constants) {
+		Double value = constants.value(expr);
+		if (value != null) {
+			constants.put(slot, value);
+		} else {
+			constants.forget(slot);
+		}
+		return this;
+	}
+
 	/**
 	 * Evaluates the assignment by computing the expression value
 	 * and storing it in the environment.
@@ -25,15 +119,63 @@ public class NodeAssn extends Node {
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
-		return env.put(id, expr.eval(env));
+		return env.put(slot, expr.eval(env));
+	}
+
+	/**
+	 * Generates JVM bytecode that stores the expression into the variable.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.element(slot);
+		expr.jit(jit);
+		jit.store(slot);
+	}
+
+	/**
+	 * Lowers the assignment into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		expr.lower(vm);
+		vm.store(slot);
 	}
 
 	/**
 	 * Generates C code for the assignment statement.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append(id).append("=");
+		expr.code(out);
+		out.append(";");
+	}
+
+	/**
+	 * Writes the assignment.
+	 * @param out the stream to write to
+	 * @throws IOException if the expression can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeString(id);
+		expr.save(out);
+	}
+
+	/**
+	 * Reads an assignment written by save(),
+	 * fusing it again if it has the shape of a NodeAssnIdOpNum.
+	 * @param in the stream to read from
+	 * @return the assignment
+	 * @throws IOException if the stream is malformed
 	 */
-	public String code() {
-		return id + "=" + expr.code() + ";";
+	public static NodeAssn load(AstCache.Input in) throws IOException {
+		String id = in.readString();
+		NodeExpr expr = NodeExpr.load(in);
+		if (NodeAssnIdOpNum.fits(expr)) {
+			return new NodeAssnIdOpNum(id, expr);
+		}
+		return new NodeAssn(id, expr);
 	}
 
 }
@@ -0,0 +1,82 @@
+/**
+ * NodeAssnIdOpNum is an assignment of the shape "id = id addop num",
+ * such as "x = x + 1" in a loop.
+ * It evaluates the whole statement in one method,
+ * rather than dispatching through NodeExpr, NodeTerm, and NodeFact.
+ * C code and bytecode are generated as for any other assignment.
+ */
+public class NodeAssnIdOpNum extends NodeAssn {
+
+	private NodeFactId src;
+	private NodeAddop addop;
+	private double num;
+
+	/**
+	 * Constructs a new fused assignment node.
+	 * @param id the variable name to assign to
+	 * @param expr the expression, which must have the shape "id addop num"
+	 */
+	public NodeAssnIdOpNum(String id, NodeExpr expr) {
+		super(id, expr);
+		this.src = (NodeFactId)expr.term(0).fact();
+		this.addop = expr.addop(0);
+		this.num = ((NodeFactNum)expr.term(1).fact()).value();
+	}
+
+	/**
+	 * Constructs a copy of a fused assignment node.
+	 * @param assn the assignment to copy
+	 */
+	protected NodeAssnIdOpNum(NodeAssnIdOpNum assn) {
+		super(assn);
+		this.src = assn.src;
+		this.addop = assn.addop;
+		this.num = assn.num;
+	}
+
+	/**
+	 * Checks whether an expression has the shape "id addop num".
+	 * @param expr the expression
+	 * @return true if an assignment of the expression can be fused
+	 */
+	public static boolean fits(NodeExpr expr) {
+		return expr.size() == 2 && expr.term(0).fact() instanceof NodeFactId
+		    && expr.term(1).fact() instanceof NodeFactNum;
+	}
+
+	/**
+	 * Gets the amount the assignment adds to its source.
+	 * @return num, or -num if addop subtracts
+	 */
+	public double step() {
+		return addop instanceof NodeSub ? -num : num;
+	}
+
+	/**
+	 * Notes the assignment, which may update an induction variable,
+	 * and replaces it, if it does.
+	 * Its expression has nothing to hoist.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return the replacement, or this node
+	 */
+	public NodeAssn hoist(Hoist hoist) {
+		if (hoist == null)
+			return this;
+		if (hoist.discovering()) {
+			hoist.update(this, slot, src.slot());
+			return this;
+		}
+		return hoist.reduced(this, slot);
+	}
+
+	/**
+	 * Evaluates the assignment.
+	 * @param env the environment to store the variable in
+	 * @return the value that was assigned
+	 * @throws EvalException if the source variable is undefined
+	 */
+	public double eval(Environment env) throws EvalException {
+		return env.put(slot, addop.op(src.eval(env), num));
+	}
+
+}
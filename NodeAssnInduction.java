@@ -0,0 +1,54 @@
+/**
+ * NodeAssnInduction is the update "i = i + c" of an induction variable,
+ * which also steps the running products of i (see NodeFactInduction).
+ * An update in nested loops steps the products of each of them.
+ * Bytecode and C code are generated as for any other assignment.
+ */
+
+import java.util.*;
+
+public class NodeAssnInduction extends NodeAssnIdOpNum {
+
+	private NodeFactInduction[] products = new NodeFactInduction[0];
+
+	/**
+	 * Constructs an update from a fused assignment.
+	 * @param assn the assignment, which must update its own source
+	 */
+	public NodeAssnInduction(NodeAssnIdOpNum assn) {
+		super(assn);
+	}
+
+	/**
+	 * Adds running products for the update to step.
+	 * @param more the products
+	 */
+	public void steps(NodeFactInduction[] more) {
+		int n = products.length;
+		products = Arrays.copyOf(products, n + more.length);
+		System.arraycopy(more, 0, products, n, more.length);
+	}
+
+	/**
+	 * Checks whether the update steps any running products.
+	 * @return true if it does
+	 */
+	public boolean stepping() {
+		return products.length > 0;
+	}
+
+	/**
+	 * Evaluates the update, and steps the running products.
+	 * @param env the environment to store the variable in
+	 * @return the value that was assigned
+	 * @throws EvalException if the variable is undefined
+	 */
+	public double eval(Environment env) throws EvalException {
+		double value = super.eval(env);
+		for (NodeFactInduction product : products) {
+			product.step();
+		}
+		return value;
+	}
+
+}
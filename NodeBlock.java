@@ -2,6 +2,10 @@
  * NodeBlock represents a block of statements in the parse tree.
  * A block is a sequence of statements that can be treated as a single unit.
  */
+
+import java.io.*;
+import java.util.*;
+
 public class NodeBlock extends Node {
 
 	private NodeStmt stmt;
@@ -26,6 +30,130 @@ public class NodeBlock extends Node {
 		this.block = block;
 	}
 
+	// Each method walks the chain of blocks with a loop,
+	// rather than recursing, so a long program cannot overflow the stack.
+
+	/**
+	 * Folds all statements in the block.
+	 * @return this node
+	 */
+	public Node fold() {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.fold();
+		}
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of all statements in the block.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.resolve(env);
+		}
+	}
+
+	/**
+	 * Adds the effects of all statements in the block.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.effects(effects);
+		}
+	}
+
+	/**
+	 * Finds the reads of the statements that need no check, in sequence.
+	 * @param definite the variables defined before the block
+	 */
+	public void definite(Definite definite) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.definite(definite);
+		}
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of all statements in the block.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public Node hoist(Hoist hoist) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.hoist(hoist);
+		}
+		return this;
+	}
+
+	/**
+	 * Propagates constants through the statements in sequence,
+	 * and unlinks those that can never run.
+	 * @param constants the variables known before the block
+	 * @return this node, or null if none of its statements can run
+	 */
+	public Node propagate(Constants constants) {
+		List<NodeStmt> kept = new ArrayList<NodeStmt>();
+		for (NodeBlock b = this; b != null; b = b.block) {
+			NodeStmt s = b.stmt.propagate(constants);
+			if (s != null) {
+				kept.add(s);
+			}
+		}
+		if (kept.isEmpty()) {
+			return null;
+		}
+		// the chain is at least as long as what is kept
+		NodeBlock b = this;
+		b.stmt = kept.get(0);
+		for (int i = 1; i < kept.size(); i++) {
+			b = b.block;
+			b.stmt = kept.get(i);
+		}
+		b.block = null;
+		return this;
+	}
+
+	/**
+	 * Counts the statements that evaluating the block once executes,
+	 * if it consists only of assignments (see assignments()).
+	 * @return the number of statements
+	 */
+	public int statements() {
+		int n = 0;
+		for (NodeBlock b = this; b != null; b = b.block) {
+			n += b.stmt.statements();
+		}
+		return n;
+	}
+
+	/**
+	 * Adds the assignments the block consists of, in order,
+	 * if it consists only of assignments.
+	 * @param list the list to add them to
+	 * @return false if a statement in the block isn't an assignment
+	 */
+	public boolean assignments(List<NodeAssn> list) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			if (!b.stmt.assignments(list)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Profiles all statements in the block.
+	 * @param profiler the profiler that keeps the counts
+	 * @return this node
+	 */
+	public Node profile(Profiler profiler) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt = b.stmt.profile(profiler);
+		}
+		return this;
+	}
+
 	/**
 	 * Evaluates the block by executing all statements in sequence.
 	 * @param env the environment containing variable values
@@ -33,26 +161,84 @@ public class NodeBlock extends Node {
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
-		double result = stmt.eval(env);
-		if (block != null) {
-			result = block.eval(env);
+		double result = 0.0;
+		for (NodeBlock b = this; b != null; b = b.block) {
+			result = b.stmt.eval(env);
 		}
 		return result;
 	}
 
+	/**
+	 * Generates JVM bytecode for all statements in sequence.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.jit(jit);
+		}
+	}
+
+	/**
+	 * Lowers all statements, in sequence, into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.lower(vm);
+		}
+	}
+
 	/**
 	 * Generates C code for the block.
 	 * Blocks are sequences of statements, so we just concatenate their code.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() {
-		StringBuilder sb = new StringBuilder();
-		sb.append(stmt.code());
-		if (block != null) {
-			sb.append(block.code());
+	public void code(Appendable out) throws IOException {
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.code(out);
 		}
-		return sb.toString();
 	}
 
-}
+	/**
+	 * Writes the block, as a count followed by its statements.
+	 * @param out the stream to write to
+	 * @throws IOException if a statement can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		int n = 0;
+		for (NodeBlock b = this; b != null; b = b.block) {
+			n++;
+		}
+		out.writeInt(n);
+		for (NodeBlock b = this; b != null; b = b.block) {
+			b.stmt.save(out);
+		}
+	}
 
+	/**
+	 * Reads a block written by save().
+	 * @param in the stream to read from
+	 * @return the block
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeBlock load(AstCache.Input in) throws IOException {
+		int n = in.readInt();
+		if (n < 1) {
+			throw new IOException("bad block size: " + n);
+		}
+		NodeStmt[] stmts = new NodeStmt[Math.min(n, 1024)];
+		for (int i = 0; i < n; i++) {
+			if (i == stmts.length) {
+				stmts = Arrays.copyOf(stmts, Math.min(n, 2 * i));
+			}
+			stmts[i] = NodeStmt.load(in);
+		}
+		NodeBlock block = null;
+		for (int i = n - 1; i >= 0; i--) {
+			block = new NodeBlock(stmts[i], block);
+		}
+		return block;
+	}
+
+}
@@ -2,6 +2,9 @@
  * NodeBoolexpr represents a boolean expression in the parse tree.
  * A boolean expression compares two expressions using a relational operator.
  */
+
+import java.io.*;
+
 public class NodeBoolexpr extends Node {
 
 	private NodeExpr expr1;
@@ -20,6 +23,78 @@ public class NodeBoolexpr extends Node {
 		this.expr2 = expr2;
 	}
 
+	/**
+	 * Gets the left expression.
+	 * @return the expression
+	 */
+	public NodeExpr expr1() {
+		return expr1;
+	}
+
+	/**
+	 * Gets the relational operator.
+	 * @return the operator
+	 */
+	public NodeRelop relop() {
+		return relop;
+	}
+
+	/**
+	 * Gets the right expression.
+	 * @return the expression
+	 */
+	public NodeExpr expr2() {
+		return expr2;
+	}
+
+	/**
+	 * Folds both expressions.
+	 * @return this node
+	 */
+	public Node fold() {
+		expr1.fold();
+		expr2.fold();
+		return this;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of both expressions.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public Node hoist(Hoist hoist) {
+		expr1.hoist(hoist);
+		expr2.hoist(hoist);
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of both expressions.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		expr1.resolve(env);
+		expr2.resolve(env);
+	}
+
+	/**
+	 * Adds the variables of both expressions.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		expr1.effects(effects);
+		expr2.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of both expressions that need no check.
+	 * @param definite the variables defined before the comparison
+	 */
+	public void definite(Definite definite) {
+		expr1.definite(definite);
+		expr2.definite(definite);
+	}
+
 	/**
 	 * Evaluates the boolean expression.
 	 * @param env the environment containing variable values
@@ -32,12 +107,68 @@ public class NodeBoolexpr extends Node {
 		return relop.op(left, right);
 	}
 
+	/**
+	 * Generates JVM bytecode that jumps if the comparison is false.
+	 * @param jit the bytecode generator
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public void jit(Jit jit, Jit.Label no) {
+		expr1.jit(jit);
+		expr2.jit(jit);
+		relop.jit(jit, no);
+	}
+
+	/**
+	 * Lowers the boolean expression into VM instructions
+	 * that jump if the comparison is false.
+	 * @param vm the instruction stream being built
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public void lower(Vm vm, Vm.Label no) {
+		expr1.lower(vm);
+		expr2.lower(vm);
+		relop.lower(vm, no);
+	}
+
 	/**
 	 * Generates C code for the boolean expression.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("(");
+		expr1.code(out);
+		relop.code(out);
+		expr2.code(out);
+		out.append(")");
+	}
+
+	/**
+	 * Writes the boolean expression.
+	 * @param out the stream to write to
+	 * @throws IOException if a child can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		expr1.save(out);
+		relop.save(out);
+		expr2.save(out);
+	}
+
+	/**
+	 * Reads a boolean expression written by save(),
+	 * fusing it again if it has the shape of a NodeBoolexprIdNum.
+	 * @param in the stream to read from
+	 * @return the boolean expression
+	 * @throws IOException if the stream is malformed
 	 */
-	public String code() {
-		return "(" + expr1.code() + relop.code() + expr2.code() + ")";
+	public static NodeBoolexpr load(AstCache.Input in) throws IOException {
+		NodeExpr expr1 = NodeExpr.load(in);
+		NodeRelop relop = NodeRelop.load(in);
+		NodeExpr expr2 = NodeExpr.load(in);
+		if (NodeBoolexprIdNum.fits(expr1, expr2)) {
+			return new NodeBoolexprIdNum(expr1, relop, expr2);
+		}
+		return new NodeBoolexpr(expr1, relop, expr2);
 	}
 
 }
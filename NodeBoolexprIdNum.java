@@ -0,0 +1,57 @@
+/**
+ * NodeBoolexprIdNum is a boolean expression of the shape "id relop num",
+ * such as "x < 10" in a loop header.
+ * It evaluates the whole comparison in one method,
+ * rather than dispatching through NodeExpr, NodeTerm, and NodeFact.
+ * C code and bytecode are generated as for any other boolean expression.
+ */
+public class NodeBoolexprIdNum extends NodeBoolexpr {
+
+	private NodeFactId id;
+	private NodeRelop relop;
+	private double num;
+
+	/**
+	 * Constructs a new fused boolean expression node.
+	 * @param expr1 the left expression, which must be a lone identifier
+	 * @param relop the relational operator
+	 * @param expr2 the right expression, which must be a lone literal
+	 */
+	public NodeBoolexprIdNum(NodeExpr expr1, NodeRelop relop, NodeExpr expr2) {
+		super(expr1, relop, expr2);
+		this.id = (NodeFactId)expr1.fact();
+		this.relop = relop;
+		this.num = ((NodeFactNum)expr2.fact()).value();
+	}
+
+	/**
+	 * Checks whether a comparison has the shape "id relop num".
+	 * @param expr1 the left expression
+	 * @param expr2 the right expression
+	 * @return true if the comparison can be fused
+	 */
+	public static boolean fits(NodeExpr expr1, NodeExpr expr2) {
+		return expr1.fact() instanceof NodeFactId
+		    && expr2.fact() instanceof NodeFactNum;
+	}
+
+	/**
+	 * Leaves the comparison as it is, since it has nothing to hoist.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public Node hoist(Hoist hoist) {
+		return this;
+	}
+
+	/**
+	 * Evaluates the boolean expression.
+	 * @param env the environment containing variable values
+	 * @return 1.0 if the comparison is true, 0.0 if false
+	 * @throws EvalException if the variable is undefined
+	 */
+	public double eval(Environment env) throws EvalException {
+		return relop.op(id.eval(env), num);
+	}
+
+}
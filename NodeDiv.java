@@ -0,0 +1,40 @@
+/**
+ * NodeDiv represents a division operator in the parse tree.
+ */
+public class NodeDiv extends NodeMulop {
+
+	/**
+	 * Constructs a new division operator node.
+	 * @param pos the position in the source code
+	 */
+	public NodeDiv(int pos) {
+		super(pos, "/");
+	}
+
+	/**
+	 * Divides the first operand by the second.
+	 * @param o1 the first operand
+	 * @param o2 the second operand
+	 * @return the quotient
+	 */
+	public double op(double o1, double o2) {
+		return o1/o2;
+	}
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.op(Jit.DDIV);
+	}
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.op(Vm.DIV);
+	}
+
+}
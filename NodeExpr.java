@@ -1,38 +1,157 @@
 /**
  * NodeExpr represents an expression in the parse tree.
- * An expression can be a single term or a term combined with an expression
- * using an addition or subtraction operator.
+ * An expression is a sequence of terms,
+ * combined left to right by addition or subtraction operators.
+ * The terms and operators are kept in flat arrays,
+ * so a long expression is built and evaluated with loops,
+ * rather than as a deep chain of nodes.
  */
+
+import java.io.*;
+import java.util.*;
+
 public class NodeExpr extends Node {
 
-	private NodeTerm term;
-	private NodeAddop addop;
-	private NodeExpr expr;
+	private NodeTerm[] terms;
+	private NodeAddop[] addops; // addops[i] is between terms[i] and terms[i+1]
 
 	/**
 	 * Constructs a new expression node.
-	 * @param term the term component
-	 * @param addop the addition/subtraction operator (can be null)
-	 * @param expr the expression component (can be null)
+	 * @param terms the terms, at least one
+	 * @param addops the addition/subtraction operators, one fewer than terms
+	 */
+	public NodeExpr(NodeTerm[] terms, NodeAddop[] addops) {
+		this.terms=terms;
+		this.addops=addops;
+	}
+
+	/**
+	 * Constructs a new expression node with a single term.
+	 * @param term the term
+	 */
+	public NodeExpr(NodeTerm term) {
+		this(new NodeTerm[] { term },new NodeAddop[0]);
+	}
+
+	/**
+	 * Gets the lone factor of an expression without operators.
+	 * @return the factor, or null if the expression has an operator
+	 */
+	public NodeFact fact() {
+		return terms.length==1 ? terms[0].fact() : null;
+	}
+
+	/**
+	 * Gets the number of terms in the expression.
+	 * @return the number of terms
+	 */
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Gets a term of the expression.
+	 * @param i the index of the term
+	 * @return the term
+	 */
+	public NodeTerm term(int i) {
+		return terms[i];
+	}
+
+	/**
+	 * Gets the operator between two terms.
+	 * @param i the index of the operator, which follows term i
+	 * @return the operator
+	 */
+	public NodeAddop addop(int i) {
+		return addops[i];
+	}
+
+	/**
+	 * Folds the expression in place.
+	 * A constant prefix of the terms becomes a literal,
+	 * and "x-0" becomes "x", which is exact even for -0 and NaN.
+	 * "x+0" is kept, because it turns -0 into 0.
+	 * @return this expression
+	 */
+	public NodeExpr fold() {
+		List<NodeTerm> t=new ArrayList<NodeTerm>();
+		List<NodeAddop> a=new ArrayList<NodeAddop>();
+		t.add(terms[0].fold());
+		for (int i=1; i<terms.length; i++) {
+			NodeTerm term=terms[i].fold();
+			NodeAddop addop=addops[i-1];
+			NodeFact left=t.size()==1 ? t.get(0).fact() : null;
+			NodeFact right=term.fact();
+			if (left instanceof NodeFactNum && right instanceof NodeFactNum) {
+				double value=addop.op(((NodeFactNum)left).value(),((NodeFactNum)right).value());
+				if (Double.isFinite(value)) {
+					t.set(0,new NodeTerm(new NodeFactNum(value)));
+					continue;
+				}
+			}
+			if (addop instanceof NodeSub && NodeTerm.is(right,0.0))
+				continue;
+			a.add(addop);
+			t.add(term);
+		}
+		terms=t.toArray(new NodeTerm[0]);
+		addops=a.toArray(new NodeAddop[0]);
+		return this;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the terms,
+	 * and then the longest invariant prefix of the terms,
+	 * if it has an operator, which is exact, since terms are
+	 * added left to right.
+	 * @param hoist the context of the loop around this expression, or null
+	 * @return this expression
+	 */
+	public NodeExpr hoist(Hoist hoist) {
+		if (hoist==null || hoist.discovering())
+			return this;
+		for (int i=0; i<terms.length; i++)
+			terms[i]=terms[i].hoist(hoist);
+		int n=0;
+		while (n<terms.length && hoist.invariant(terms[n]))
+			n++;
+		if (n>=2) {
+			NodeExpr prefix=new NodeExpr(Arrays.copyOf(terms,n),Arrays.copyOf(addops,n-1));
+			NodeTerm[] t=new NodeTerm[terms.length-n+1];
+			t[0]=new NodeTerm(hoist.hoist(prefix));
+			System.arraycopy(terms,n,t,1,terms.length-n);
+			terms=t;
+			addops=Arrays.copyOfRange(addops,n-1,addops.length);
+		}
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of the terms.
+	 * @param env the environment that allocates slots
 	 */
-	public NodeExpr(NodeTerm term, NodeAddop addop, NodeExpr expr) {
-		this.term=term;
-		this.addop=addop;
-		this.expr=expr;
+	public void resolve(Environment env) {
+		for (NodeTerm term: terms)
+			term.resolve(env);
 	}
 
 	/**
-	 * Appends another expression to this one.
-	 * Used for building right-associative expressions.
-	 * @param expr the expression to append
+	 * Adds the variables of the expression.
+	 * @param effects the read/write set
 	 */
-	public void append(NodeExpr expr) {
-		if (this.expr==null) {
-			this.addop=expr.addop;
-			this.expr=expr;
-			expr.addop=null;
-		} else
-			this.expr.append(expr);
+	public void effects(Effects effects) {
+		for (NodeTerm term: terms)
+			term.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the terms that need no check.
+	 * @param definite the variables defined before the expression
+	 */
+	public void definite(Definite definite) {
+		for (NodeTerm term: terms)
+			term.definite(definite);
 	}
 
 	/**
@@ -42,17 +161,83 @@ public class NodeExpr extends Node {
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
-		return expr==null
-			? term.eval(env)
-			: addop.op(expr.eval(env),term.eval(env));
+		double value=terms[0].eval(env);
+		for (int i=1; i<terms.length; i++)
+			value=addops[i-1].op(value,terms[i].eval(env));
+		return value;
+	}
+
+	/**
+	 * Generates JVM bytecode for the expression, leaving its value on the stack.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		terms[0].jit(jit);
+		for (int i=1; i<terms.length; i++) {
+			terms[i].jit(jit);
+			addops[i-1].jit(jit);
+		}
+	}
+
+	/**
+	 * Lowers the expression into VM instructions that push its value.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		terms[0].lower(vm);
+		for (int i=1; i<terms.length; i++) {
+			terms[i].lower(vm);
+			addops[i-1].lower(vm);
+		}
 	}
 
 	/**
 	 * Generates C code for the expression.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		terms[0].code(out);
+		for (int i=1; i<terms.length; i++) {
+			addops[i-1].code(out);
+			terms[i].code(out);
+		}
+	}
+
+	/**
+	 * Writes the expression, as a count followed by its terms and operators.
+	 * @param out the stream to write to
+	 * @throws IOException if a child can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeInt(terms.length);
+		terms[0].save(out);
+		for (int i=1; i<terms.length; i++) {
+			addops[i-1].save(out);
+			terms[i].save(out);
+		}
+	}
+
+	/**
+	 * Reads an expression written by save().
+	 * @param in the stream to read from
+	 * @return the expression
+	 * @throws IOException if the stream is malformed
 	 */
-	public String code() {
-		return (expr==null ? "" : expr.code()+addop.code())+term.code();
+	public static NodeExpr load(AstCache.Input in) throws IOException {
+		int n=in.readInt();
+		if (n<1)
+			throw new IOException("bad expression size: "+n);
+		if (n==1)
+			return new NodeExpr(NodeTerm.load(in));
+		List<NodeTerm> terms=new ArrayList<NodeTerm>();
+		List<NodeAddop> addops=new ArrayList<NodeAddop>();
+		terms.add(NodeTerm.load(in));
+		for (int i=1; i<n; i++) {
+			addops.add(NodeAddop.load(in));
+			terms.add(NodeTerm.load(in));
+		}
+		return new NodeExpr(terms.toArray(new NodeTerm[0]),addops.toArray(new NodeAddop[0]));
 	}
 
 }
@@ -1 +1,47 @@
-public abstract class NodeFact extends Node {}
+// This class is the superclass of factors.
+// A factor can fold to a different kind of factor
+// (e.g., a parenthesized constant to a literal),
+// so folding returns its replacement.
+
+import java.io.*;
+
+public abstract class NodeFact extends Node {
+
+	/**
+	 * Folds this factor.
+	 * @return the folded factor, which replaces this one
+	 */
+	public NodeFact fold() { return this; }
+
+	/**
+	 * Hoists loop-invariant expressions out of this factor.
+	 * @param hoist the context of the loop around this factor, or null
+	 * @return the optimized factor, which replaces this one
+	 */
+	public NodeFact hoist(Hoist hoist) { return this; }
+
+	// the kinds of factor, as saved
+	static final int ID=0;
+	static final int NUM=1;
+	static final int EXPR=2;
+	static final int MINUS=3;
+
+	/**
+	 * Reads a factor written by save(),
+	 * which starts with the kind of factor.
+	 * @param in the stream to read from
+	 * @return the factor
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeFact load(AstCache.Input in) throws IOException {
+		int kind=in.readByte();
+		switch (kind) {
+			case ID: return NodeFactId.load(in);
+			case NUM: return NodeFactNum.load(in);
+			case EXPR: return new NodeFactExpr(NodeExpr.load(in));
+			case MINUS: return new NodeFactUnaryMinus(load(in));
+			default: throw new IOException("bad factor kind: "+kind);
+		}
+	}
+
+}
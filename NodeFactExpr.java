@@ -1,6 +1,9 @@
 /**
  * NodeFactExpr represents a parenthesized expression in the parse tree.
  */
+
+import java.io.*;
+
 public class NodeFactExpr extends NodeFact {
 
 	private NodeExpr expr;
@@ -13,6 +16,53 @@ public class NodeFactExpr extends NodeFact {
 		this.expr=expr;
 	}
 
+	/**
+	 * Folds the inner expression,
+	 * and drops the parentheses around a lone factor.
+	 * @return the folded factor
+	 */
+	public NodeFact fold() {
+		expr.fold();
+		NodeFact fact=expr.fact();
+		return fact==null ? this : fact;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the inner expression,
+	 * and drops the parentheses around a lone temporary.
+	 * @param hoist the context of the loop around this factor, or null
+	 * @return the optimized factor
+	 */
+	public NodeFact hoist(Hoist hoist) {
+		expr.hoist(hoist);
+		NodeFact fact=expr.fact();
+		return fact instanceof NodeFactInvariant ? fact : this;
+	}
+
+	/**
+	 * Resolves the variables of the inner expression.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		expr.resolve(env);
+	}
+
+	/**
+	 * Adds the variables of the parenthesized expression.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		expr.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the expression that need no check.
+	 * @param definite the variables defined before the expression
+	 */
+	public void definite(Definite definite) {
+		expr.definite(definite);
+	}
+
 	/**
 	 * Evaluates the parenthesized expression.
 	 * @param env the environment containing variable values
@@ -23,10 +73,41 @@ public class NodeFactExpr extends NodeFact {
 		return expr.eval(env);
 	}
 
+	/**
+	 * Generates JVM bytecode for the inner expression.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		expr.jit(jit);
+	}
+
+	/**
+	 * Lowers the inner expression into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		expr.lower(vm);
+	}
+
 	/**
 	 * Generates C code for the parenthesized expression.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("(");
+		expr.code(out);
+		out.append(")");
+	}
+
+	/**
+	 * Writes the parenthesized expression.
+	 * @param out the stream to write to
+	 * @throws IOException if the expression can't be saved
 	 */
-	public String code() { return "("+expr.code()+")"; }
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(EXPR);
+		expr.save(out);
+	}
 
 }
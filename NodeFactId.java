@@ -1,9 +1,14 @@
 /**
  * NodeFactId represents a variable identifier in the parse tree.
  */
+
+import java.io.*;
+
 public class NodeFactId extends NodeFact {
 
 	private String id;
+	private int slot;
+	private boolean checked=true;	// false if it is certainly defined (see Definite)
 
 	/**
 	 * Constructs a new variable identifier node.
@@ -16,19 +21,97 @@ public class NodeFactId extends NodeFact {
 	}
 
 	/**
-	 * Evaluates the variable by looking up its value in the environment.
+	 * Gets the slot of the variable.
+	 * @return the slot, once resolved
+	 */
+	public int slot() {
+		return slot;
+	}
+
+	/**
+	 * Resolves the variable to its slot.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		slot=env.slot(id);
+	}
+
+	/**
+	 * Adds the variable, which is read.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		effects.read(slot);
+	}
+
+	/**
+	 * Reads the variable without a check, if it is certainly defined.
+	 * @param definite the variables defined before the read
+	 */
+	public void definite(Definite definite) {
+		checked=!definite.defined(slot);
+	}
+
+	/**
+	 * Evaluates the variable by looking up its value in the environment,
+	 * checking that it is defined, unless it certainly is.
 	 * @param env the environment containing variable values
 	 * @return the value of the variable as a double
 	 * @throws EvalException if the variable is undefined
 	 */
 	public double eval(Environment env) throws EvalException {
-		return env.get(pos,id);
+		return checked ? env.get(pos,slot) : env.load(slot);
+	}
+
+	/**
+	 * Generates JVM bytecode that loads the variable.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		if (checked)
+			jit.load(pos,slot);
+		else
+			jit.load(slot);
+	}
+
+	/**
+	 * Lowers the variable into a VM load.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		if (checked)
+			vm.load(pos,slot);
+		else
+			vm.load(slot);
 	}
 
 	/**
 	 * Generates C code for the variable identifier.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() { return id; }
+	public void code(Appendable out) throws IOException { out.append(id); }
+
+	/**
+	 * Writes the variable, as its position and name.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(ID);
+		out.writePos(pos);
+		out.writeString(id);
+	}
+
+	/**
+	 * Reads a variable written by save(), after its kind.
+	 * @param in the stream to read from
+	 * @return the variable
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeFactId load(AstCache.Input in) throws IOException {
+		int pos=in.readPos();
+		return new NodeFactId(pos,in.readString());
+	}
 
 }
@@ -0,0 +1,140 @@
+/**
+ * NodeFactInduction is a product "i*k", of an induction variable i,
+ * updated in its loop only by "i = i + c", and a constant k,
+ * which is strength-reduced into a running product (see Hoist):
+ * the loop starts it at i*k, when it is entered,
+ * and each update of i adds k*c to it.
+ * The running product is kept only while it is exactly i*k:
+ * while i, k, and k*c are whole numbers, and it is less than 2^53,
+ * so every product and sum is exact.
+ * A zero is not kept, since its sign may differ from that of i*k.
+ * Otherwise, and outside the loop, the product is evaluated.
+ * Only the tree-walking evaluator keeps the running product;
+ * bytecode and C code compute the product in place.
+ */
+
+import java.io.*;
+
+public class NodeFactInduction extends NodeFact {
+
+	private static final double LIMIT=0x1p53;
+
+	private final NodeFactId id;
+	private final double k;
+	private final double step;		// k*c
+	private final NodeTerm product;
+	private double value;
+	private boolean kept=false;
+
+	/**
+	 * Constructs a new running product.
+	 * @param id the induction variable
+	 * @param k the constant
+	 * @param step the constant times the variable's step
+	 * @param product the product, as a term, evaluated when nothing is kept
+	 */
+	public NodeFactInduction(NodeFactId id, double k, double step, NodeTerm product) {
+		this.id=id;
+		this.k=k;
+		this.step=step;
+		this.product=product;
+	}
+
+	/**
+	 * Checks whether a value is a whole number small enough
+	 * that sums and products of such numbers are exact.
+	 * @param d the value
+	 * @return true if it is
+	 */
+	public static boolean exact(double d) {
+		return d==Math.rint(d) && Math.abs(d)<LIMIT;
+	}
+
+	/**
+	 * Starts the running product, as its loop is entered.
+	 * @param env the environment containing variable values
+	 */
+	public void enter(Environment env) {
+		try {
+			double i=id.eval(env);
+			value=i*k;
+			kept=exact(i) && Math.abs(value)<LIMIT;
+		} catch (EvalException e) {
+			kept=false;
+		}
+	}
+
+	/**
+	 * Adds k*c to the running product, as i is updated.
+	 * While the sum is less than 2^53, it is exact.
+	 */
+	public void step() {
+		if (kept) {
+			value+=step;
+			kept=Math.abs(value)<LIMIT;
+		}
+	}
+
+	/**
+	 * Forgets the running product, as its loop is left.
+	 */
+	public void exit() {
+		kept=false;
+	}
+
+	/**
+	 * Adds the variable of the product.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		product.effects(effects);
+	}
+
+	/**
+	 * Gets the value of the product.
+	 * @param env the environment containing variable values
+	 * @return the running product, or else the value of the product
+	 * @throws EvalException if evaluation fails
+	 */
+	public double eval(Environment env) throws EvalException {
+		return kept && value!=0 ? value : product.eval(env);
+	}
+
+	/**
+	 * Generates JVM bytecode for the product.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		product.jit(jit);
+	}
+
+	/**
+	 * Lowers the product into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		product.lower(vm);
+	}
+
+	/**
+	 * Generates C code for the product, in parentheses.
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("(");
+		product.code(out);
+		out.append(")");
+	}
+
+	/**
+	 * Writes the product, as a parenthesized expression.
+	 * @param out the stream to write to
+	 * @throws IOException if the product can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(EXPR);
+		new NodeExpr(product).save(out);
+	}
+
+}
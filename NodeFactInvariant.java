@@ -0,0 +1,105 @@
+/**
+ * NodeFactInvariant is a temporary, hoisted out of a while loop,
+ * that holds the value of a loop-invariant expression (see Hoist).
+ * The loop computes it when it is entered, and forgets it when it is left,
+ * so it is never used outside the loop, where the expression's
+ * variables may change.
+ * If computing it fails (e.g., a variable is undefined), it is not kept,
+ * and the expression is evaluated where it is used,
+ * so the failure happens where, and when, it would have without hoisting.
+ * Only the tree-walking evaluator keeps the temporary;
+ * bytecode and C code compute the expression in place.
+ */
+
+import java.io.*;
+
+public class NodeFactInvariant extends NodeFact {
+
+	private final NodeExpr expr;
+	private double value;
+	private boolean kept=false;
+
+	/**
+	 * Constructs a new temporary.
+	 * @param expr the loop-invariant expression
+	 */
+	public NodeFactInvariant(NodeExpr expr) {
+		this.expr=expr;
+	}
+
+	/**
+	 * Computes the temporary, as its loop is entered.
+	 * @param env the environment containing variable values
+	 */
+	public void enter(Environment env) {
+		try {
+			value=expr.eval(env);
+			kept=true;
+		} catch (EvalException e) {
+			kept=false;
+		}
+	}
+
+	/**
+	 * Forgets the temporary, as its loop is left.
+	 */
+	public void exit() {
+		kept=false;
+	}
+
+	/**
+	 * Adds the variables of the expression.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		expr.effects(effects);
+	}
+
+	/**
+	 * Gets the value of the expression.
+	 * @param env the environment containing variable values
+	 * @return the value kept, or else the value of the expression
+	 * @throws EvalException if evaluation fails
+	 */
+	public double eval(Environment env) throws EvalException {
+		return kept ? value : expr.eval(env);
+	}
+
+	/**
+	 * Generates JVM bytecode for the expression.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		expr.jit(jit);
+	}
+
+	/**
+	 * Lowers the expression into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		expr.lower(vm);
+	}
+
+	/**
+	 * Generates C code for the expression, in parentheses.
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("(");
+		expr.code(out);
+		out.append(")");
+	}
+
+	/**
+	 * Writes the expression, as a parenthesized one.
+	 * @param out the stream to write to
+	 * @throws IOException if the expression can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(EXPR);
+		expr.save(out);
+	}
+
+}
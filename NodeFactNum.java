@@ -1,37 +1,105 @@
 /**
  * NodeFactNum represents a numeric literal in the parse tree.
  * It can handle both integer and floating-point numbers.
+ * The literal is converted to a double once, when the node is built.
  */
+
+import java.io.*;
+
 public class NodeFactNum extends NodeFact {
 
 	private String num;
+	private double value;
 
 	/**
 	 * Constructs a new numeric literal node.
 	 * @param num the numeric string value
+	 * @throws NumberFormatException if the number format is invalid
 	 */
 	public NodeFactNum(String num) {
 		this.num=num;
+		this.value=Double.parseDouble(num);
+	}
+
+	/**
+	 * Constructs a new numeric literal node for a computed value,
+	 * such as a folded constant, which must be finite.
+	 * @param value the numeric value
+	 */
+	public NodeFactNum(double value) {
+		// a negative literal is parenthesized, so "x-(-1.0)" is not "x--1.0"
+		this.num=Double.doubleToRawLongBits(value)<0
+			? "("+value+")"
+			: ""+value;
+		this.value=value;
+	}
+
+	private NodeFactNum(String num, double value) {
+		this.num=num;
+		this.value=value;
+	}
+
+	/**
+	 * Gets the value of the numeric literal.
+	 * @return the numeric value as a double
+	 */
+	public double value() {
+		return value;
 	}
 
 	/**
 	 * Evaluates the numeric literal.
 	 * @param env the environment (not used for literals)
 	 * @return the numeric value as a double
-	 * @throws EvalException if the number format is invalid
 	 */
-	public double eval(Environment env) throws EvalException {
-		try {
-			return Double.parseDouble(num);
-		} catch (NumberFormatException e) {
-			throw new EvalException(pos, "invalid number format: " + num);
-		}
+	public double eval(Environment env) {
+		return value;
+	}
+
+	/**
+	 * Generates JVM bytecode that pushes the literal.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.num(value);
+	}
+
+	/**
+	 * Lowers the literal into a VM constant.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.num(value);
 	}
 
 	/**
 	 * Generates C code for the numeric literal.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() { return num; }
+	public void code(Appendable out) throws IOException { out.append(num); }
+
+	/**
+	 * Writes the literal, as its C code and its value,
+	 * so that a folded literal needs no parsing when it is read.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(NUM);
+		out.writeString(num);
+		out.writeDouble(value);
+	}
+
+	/**
+	 * Reads a literal written by save(), after its kind.
+	 * @param in the stream to read from
+	 * @return the literal
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeFactNum load(AstCache.Input in) throws IOException {
+		String num=in.readString();
+		return new NodeFactNum(num,in.readDouble());
+	}
 
 }
@@ -2,6 +2,9 @@
  * NodeFactUnaryMinus represents a unary minus operation in the parse tree.
  * It negates the value of a factor.
  */
+
+import java.io.*;
+
 public class NodeFactUnaryMinus extends NodeFact {
 
 	private NodeFact fact;
@@ -14,6 +17,57 @@ public class NodeFactUnaryMinus extends NodeFact {
 		this.fact = fact;
 	}
 
+	/**
+	 * Folds the negated factor.
+	 * A negated literal becomes a literal,
+	 * and a double negation becomes the inner factor.
+	 * @return the folded factor
+	 */
+	public NodeFact fold() {
+		fact = fact.fold();
+		if (fact instanceof NodeFactNum) {
+			return new NodeFactNum(-((NodeFactNum)fact).value());
+		}
+		if (fact instanceof NodeFactUnaryMinus) {
+			return ((NodeFactUnaryMinus)fact).fact;
+		}
+		return this;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the negated factor.
+	 * @param hoist the context of the loop around this factor, or null
+	 * @return this node
+	 */
+	public NodeFact hoist(Hoist hoist) {
+		fact = fact.hoist(hoist);
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of the negated factor.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		fact.resolve(env);
+	}
+
+	/**
+	 * Adds the variables of the factor.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		fact.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the factor that need no check.
+	 * @param definite the variables defined before the factor
+	 */
+	public void definite(Definite definite) {
+		fact.definite(definite);
+	}
+
 	/**
 	 * Evaluates the unary minus by negating the factor's value.
 	 * @param env the environment containing variable values
@@ -24,12 +78,43 @@ public class NodeFactUnaryMinus extends NodeFact {
 		return -fact.eval(env);
 	}
 
+	/**
+	 * Generates JVM bytecode that negates the factor.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		fact.jit(jit);
+		jit.op(Jit.DNEG);
+	}
+
+	/**
+	 * Lowers the negation into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		fact.lower(vm);
+		vm.op(Vm.NEG);
+	}
+
 	/**
 	 * Generates C code for the unary minus operation.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("(-");
+		fact.code(out);
+		out.append(")");
+	}
+
+	/**
+	 * Writes the negated factor.
+	 * @param out the stream to write to
+	 * @throws IOException if the factor can't be saved
 	 */
-	public String code() {
-		return "(-" + fact.code() + ")";
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(MINUS);
+		fact.save(out);
 	}
 
 }
@@ -0,0 +1,42 @@
+/**
+ * NodeGe represents a greater-than-or-equal operator in the parse tree.
+ */
+public class NodeGe extends NodeRelop {
+
+	/**
+	 * Constructs a new greater-than-or-equal operator node.
+	 * @param pos the position in the source code
+	 */
+	public NodeGe(int pos) {
+		super(pos, ">=");
+	}
+
+	/**
+	 * Compares the operands.
+	 * @param left the left operand
+	 * @param right the right operand
+	 * @return 1.0 if left >= right, 0.0 otherwise
+	 */
+	public double op(double left, double right) {
+		return left >= right ? 1.0 : 0.0;
+	}
+
+	/**
+	 * Generates a JVM comparison that jumps if ">=" is false.
+	 * @param jit the bytecode generator
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public void jit(Jit jit, Jit.Label no) {
+		jit.compare(Jit.DCMPL, Jit.IFLT, no);
+	}
+
+	/**
+	 * Lowers the operator into a VM jump taken if ">=" is false.
+	 * @param vm the instruction stream being built
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public void lower(Vm vm, Vm.Label no) {
+		vm.jumpUnless(Vm.JNGE, no);
+	}
+
+}
@@ -2,11 +2,14 @@
  * NodeIf represents an if statement in the parse tree.
  * It can be an if-then or if-then-else statement.
  */
+
+import java.io.*;
+
 public class NodeIf extends Node {
 
-	private NodeBoolexpr boolexpr;
-	private NodeStmt stmt1;
-	private NodeStmt stmt2; // null for if-then, non-null for if-then-else
+	protected NodeBoolexpr boolexpr;
+	protected NodeStmt stmt1;
+	protected NodeStmt stmt2; // null for if-then, non-null for if-then-else
 
 	/**
 	 * Constructs a new if-then node.
@@ -31,6 +34,112 @@ public class NodeIf extends Node {
 		this.stmt2 = stmt2;
 	}
 
+	/**
+	 * Folds the condition and both branches.
+	 * @return this node
+	 */
+	public Node fold() {
+		boolexpr.fold();
+		stmt1.fold();
+		if (stmt2 != null) {
+			stmt2.fold();
+		}
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of the condition and both branches.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		boolexpr.resolve(env);
+		stmt1.resolve(env);
+		if (stmt2 != null) {
+			stmt2.resolve(env);
+		}
+	}
+
+	/**
+	 * Adds the effects of the condition, and of both branches.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		boolexpr.effects(effects);
+		stmt1.effects(effects);
+		if (stmt2 != null) {
+			stmt2.effects(effects);
+		}
+	}
+
+	/**
+	 * Finds the reads of the condition and both branches that need no check.
+	 * A variable is defined after the statement if both branches define it.
+	 * @param definite the variables defined before the statement
+	 */
+	public void definite(Definite definite) {
+		boolexpr.definite(definite);
+		Definite other = definite.copy();
+		stmt1.definite(definite);
+		if (stmt2 != null) {
+			stmt2.definite(other);
+		}
+		definite.meet(other);
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the condition and both branches.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public NodeIf hoist(Hoist hoist) {
+		boolexpr.hoist(hoist);
+		stmt1.hoist(hoist);
+		if (stmt2 != null) {
+			stmt2.hoist(hoist);
+		}
+		return this;
+	}
+
+	/**
+	 * Propagates constants through the if statement.
+	 * If the condition is constant, the branch taken replaces it.
+	 * Otherwise, a variable is known after it if both branches agree on it.
+	 * A branch that can never run is kept, since its condition is tested.
+	 * @param constants the variables known before the statement
+	 * @return this node, the branch taken, or null if there is none
+	 */
+	public Node propagate(Constants constants) {
+		Double condition = constants.value(boolexpr);
+		if (condition != null) {
+			NodeStmt taken = condition != 0.0 ? stmt1 : stmt2;
+			return taken == null ? null : taken.propagate(constants);
+		}
+		Constants other = constants.copy();
+		stmt1 = kept(stmt1, stmt1.propagate(constants));
+		if (stmt2 != null) {
+			stmt2 = kept(stmt2, stmt2.propagate(other));
+		}
+		constants.meet(other);
+		return this;
+	}
+
+	private static NodeStmt kept(NodeStmt stmt, NodeStmt propagated) {
+		return propagated != null ? propagated : stmt;
+	}
+
+	/**
+	 * Profiles both branches, and counts which one is taken.
+	 * @param profiler the profiler that keeps the counts
+	 * @return the profiled if statement
+	 */
+	public NodeIf profile(Profiler profiler) {
+		stmt1 = stmt1.profile(profiler);
+		if (stmt2 != null) {
+			stmt2 = stmt2.profile(profiler);
+		}
+		return new NodeIfProfiled(boolexpr, stmt1, stmt2, profiler.site(pos, "if"));
+	}
+
 	/**
 	 * Evaluates the if statement.
 	 * @param env the environment containing variable values
@@ -47,23 +156,90 @@ public class NodeIf extends Node {
 		return 0.0;
 	}
 
+	/**
+	 * Generates JVM bytecode that branches around the statements.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		Jit.Label no = jit.label();
+		boolexpr.jit(jit, no);
+		stmt1.jit(jit);
+		if (stmt2 != null) {
+			Jit.Label end = jit.label();
+			jit.jump(end);
+			jit.bind(no);
+			stmt2.jit(jit);
+			jit.bind(end);
+		} else {
+			jit.bind(no);
+		}
+	}
+
+	/**
+	 * Lowers the if statement into VM branches around the statements.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		Vm.Label no = vm.label();
+		boolexpr.lower(vm, no);
+		stmt1.lower(vm);
+		if (stmt2 != null) {
+			Vm.Label end = vm.label();
+			vm.jump(end);
+			vm.bind(no);
+			stmt2.lower(vm);
+			vm.bind(end);
+		} else {
+			vm.bind(no);
+		}
+	}
+
 	/**
 	 * Generates C code for the if statement.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("if (").append(boolexpr.code()).append(") {");
-		sb.append(stmt1.code());
-		sb.append("}");
+	public void code(Appendable out) throws IOException {
+		out.append("if (");
+		boolexpr.code(out);
+		out.append(") {");
+		stmt1.code(out);
+		out.append("}");
 		
 		if (stmt2 != null) {
-			sb.append(" else {");
-			sb.append(stmt2.code());
-			sb.append("}");
+			out.append(" else {");
+			stmt2.code(out);
+			out.append("}");
 		}
-		
-		return sb.toString();
+	}
+
+	/**
+	 * Writes the if statement, flagging whether it has an else branch.
+	 * @param out the stream to write to
+	 * @throws IOException if a child can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		boolexpr.save(out);
+		stmt1.save(out);
+		out.writeBoolean(stmt2 != null);
+		if (stmt2 != null) {
+			stmt2.save(out);
+		}
+	}
+
+	/**
+	 * Reads an if statement written by save().
+	 * @param in the stream to read from
+	 * @return the if statement
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeIf load(AstCache.Input in) throws IOException {
+		NodeBoolexpr boolexpr = NodeBoolexpr.load(in);
+		NodeStmt stmt1 = NodeStmt.load(in);
+		if (in.readBoolean()) {
+			return new NodeIf(boolexpr, stmt1, NodeStmt.load(in));
+		}
+		return new NodeIf(boolexpr, stmt1);
 	}
 
 }
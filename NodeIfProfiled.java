@@ -0,0 +1,41 @@
+/**
+ * NodeIfProfiled is an if statement that counts how often
+ * its condition is true, and false, in its profile site (see Profiler).
+ */
+
+public class NodeIfProfiled extends NodeIf {
+
+	private final Profiler.Site site;
+
+	/**
+	 * Constructs a profiled if node.
+	 * @param boolexpr the boolean expression to evaluate
+	 * @param stmt1 the statement to execute if true
+	 * @param stmt2 the statement to execute if false, or null
+	 * @param site where to count the branches taken
+	 */
+	public NodeIfProfiled(NodeBoolexpr boolexpr, NodeStmt stmt1, NodeStmt stmt2,
+	                      Profiler.Site site) {
+		super(boolexpr, stmt1, stmt2);
+		this.site = site;
+	}
+
+	/**
+	 * Evaluates the if statement, counting the branch taken.
+	 * @param env the environment containing variable values
+	 * @return the value of the executed statement
+	 * @throws EvalException if evaluation fails
+	 */
+	public double eval(Environment env) throws EvalException {
+		if (boolexpr.eval(env) != 0.0) {
+			site.taken++;
+			return stmt1.eval(env);
+		}
+		site.notTaken++;
+		if (stmt2 != null) {
+			return stmt2.eval(env);
+		}
+		return 0.0;
+	}
+
+}
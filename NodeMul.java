@@ -0,0 +1,40 @@
+/**
+ * NodeMul represents a multiplication operator in the parse tree.
+ */
+public class NodeMul extends NodeMulop {
+
+	/**
+	 * Constructs a new multiplication operator node.
+	 * @param pos the position in the source code
+	 */
+	public NodeMul(int pos) {
+		super(pos, "*");
+	}
+
+	/**
+	 * Multiplies the operands.
+	 * @param o1 the first operand
+	 * @param o2 the second operand
+	 * @return the product
+	 */
+	public double op(double o1, double o2) {
+		return o1*o2;
+	}
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.op(Jit.DMUL);
+	}
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.op(Vm.MUL);
+	}
+
+}
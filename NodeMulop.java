@@ -1,39 +1,76 @@
 /**
  * NodeMulop represents a multiplication or division operator in the parse tree.
+ * Each operator is a subclass (e.g., NodeMul or NodeDiv),
+ * chosen by the parser, so evaluating one needs no string comparison.
  */
-public class NodeMulop extends Node {
+
+import java.io.*;
+
+public abstract class NodeMulop extends Node {
 
 	private String mulop;
 
 	/**
-	 * Constructs a new multiplication/division operator node.
+	 * Constructs a new operator node.
 	 * @param pos the position in the source code
 	 * @param mulop the operator string ("*" or "/")
 	 */
-	public NodeMulop(int pos, String mulop) {
+	protected NodeMulop(int pos, String mulop) {
 		this.pos=pos;
 		this.mulop=mulop;
 	}
 
 	/**
-	 * Performs the multiplication or division operation.
+	 * Performs the operation.
 	 * @param o1 the first operand
 	 * @param o2 the second operand
 	 * @return the result of the operation
-	 * @throws EvalException if the operator is invalid
 	 */
-	public double op(double o1, double o2) throws EvalException {
-		if (mulop.equals("*"))
-			return o1*o2;
-		if (mulop.equals("/"))
-			return o1/o2;
-		throw new EvalException(pos,"bogus mulop: "+mulop);
-	}
+	public abstract double op(double o1, double o2);
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public abstract void jit(Jit jit);
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public abstract void lower(Vm vm);
 
 	/**
 	 * Generates C code for the operator.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() { return mulop; }
+	public void code(Appendable out) throws IOException { out.append(mulop); }
+
+	/**
+	 * Writes the operator, as its position and string.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writePos(pos);
+		out.writeString(mulop);
+	}
+
+	/**
+	 * Reads a multiplication or division operator written by save().
+	 * @param in the stream to read from
+	 * @return the operator
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeMulop load(AstCache.Input in) throws IOException {
+		int pos=in.readPos();
+		String op=in.readString();
+		switch (op) {
+			case "*": return new NodeMul(pos);
+			case "/": return new NodeDiv(pos);
+			default: throw new IOException("bad operator: "+op);
+		}
+	}
 
 }
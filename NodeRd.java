@@ -2,12 +2,16 @@
  * NodeRd represents a read/input statement in the parse tree.
  * It reads a value from standard input and stores it in a variable.
  */
+
+import java.io.*;
+
 public class NodeRd extends Node {
 
 	private String id;
+	private int slot;
 	
-	// Static scanner shared across all read operations
-	private static java.util.Scanner scanner = null;
+	// Static reader shared across all read operations
+	private static NumberReader reader = null;
 
 	/**
 	 * Constructs a new read node.
@@ -17,6 +21,41 @@ public class NodeRd extends Node {
 		this.id = id;
 	}
 
+	/**
+	 * Resolves the variable to read into.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		slot = env.slot(id);
+	}
+
+	/**
+	 * Adds the variable, which is written, and the input.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		effects.write(slot);
+		effects.input();
+	}
+
+	/**
+	 * Defines the variable, since rd either reads it or fails.
+	 * @param definite the variables defined before the read
+	 */
+	public void definite(Definite definite) {
+		definite.define(slot);
+	}
+
+	/**
+	 * Forgets the variable, whose value is read.
+	 * @param constants the variables known before the read
+	 * @return this node
+	 */
+	public NodeRd propagate(Constants constants) {
+		constants.forget(slot);
+		return this;
+	}
+
 	/**
 	 * Reads a value from standard input and stores it in the environment.
 	 * @param env the environment to store the variable in
@@ -24,24 +63,108 @@ public class NodeRd extends Node {
 	 * @throws EvalException if reading fails
 	 */
 	public double eval(Environment env) throws EvalException {
+		return env.put(slot, read(pos, env));
+	}
+
+	/**
+	 * Replaces the reader that values are read from,
+	 * which is otherwise opened on standard input when first needed.
+	 * @param r the new reader
+	 */
+	public static synchronized void reader(NumberReader r) {
+		reader = r;
+	}
+
+	/**
+	 * Reads a value from the environment's reader, or else standard input,
+	 * after flushing the output, so that a prompt is seen first.
+	 * The standard input reader is shared, so programs running concurrently
+	 * (see Isolated) take turns with it.
+	 * @param pos the position in the source code (for error reporting)
+	 * @param env the environment, whose output is flushed
+	 * @return the value that was read
+	 * @throws EvalException if reading fails
+	 */
+	public static double read(int pos, Environment env) throws EvalException {
+		env.sink().flush();
+		NumberReader r = env.reader();
 		try {
-			if (scanner == null) {
-				scanner = new java.util.Scanner(System.in);
+			if (r != null) {
+				return r.nextDouble();
+			}
+			synchronized (NodeRd.class) {
+				if (reader == null) {
+					reader = new NumberReader(System.in);
+				}
+				return reader.nextDouble();
 			}
-			double value = scanner.nextDouble();
-			env.put(id, value);
-			return value;
-		} catch (Exception e) {
+		} catch (RuntimeException e) {
 			throw new EvalException(pos, "read error: " + e.getMessage());
 		}
 	}
 
+	/**
+	 * Checks whether standard input has been read from, by rd,
+	 * so some of it may be buffered.
+	 * @return true if it has
+	 */
+	public static synchronized boolean reading() {
+		return reader != null;
+	}
+
+	/**
+	 * Hands over the part of standard input rd hasn't read,
+	 * for a process that reads it instead (see Native).
+	 * @return the input, or System.in if rd hasn't read from it
+	 */
+	public static synchronized InputStream unread() {
+		return reader == null ? System.in : reader.unread();
+	}
+
+	/**
+	 * Generates JVM bytecode that reads into the variable.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.element(slot);
+		jit.read(pos);
+		jit.store(slot);
+	}
+
+	/**
+	 * Lowers the read statement into a VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.read(pos, slot);
+	}
+
 	/**
 	 * Generates C code for the read statement.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("scanf(\"%lf\", &").append(id).append(");");
+	}
+
+	/**
+	 * Writes the read statement.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeString(id);
+	}
+
+	/**
+	 * Reads a read statement written by save().
+	 * @param in the stream to read from
+	 * @return the read statement
+	 * @throws IOException if the stream is malformed
 	 */
-	public String code() {
-		return "scanf(\"%lf\", &" + id + ");";
+	public static NodeRd load(AstCache.Input in) throws IOException {
+		return new NodeRd(in.readString());
 	}
 
 }
\ No newline at end of file
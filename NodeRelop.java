@@ -1,8 +1,13 @@
 /**
  * NodeRelop represents a relational operator in the parse tree.
  * Relational operators compare two expressions and return a boolean value.
+ * Each operator is a subclass (e.g., NodeLt or NodeLe),
+ * chosen by the parser, so evaluating one needs no string comparison.
  */
-public class NodeRelop extends Node {
+
+import java.io.*;
+
+public abstract class NodeRelop extends Node {
 
 	private String op;
 
@@ -11,7 +16,7 @@ public class NodeRelop extends Node {
 	 * @param pos the position in the source code
 	 * @param op the operator string (e.g., "<", "<=", ">", ">=", "<>", "==")
 	 */
-	public NodeRelop(int pos, String op) {
+	protected NodeRelop(int pos, String op) {
 		this.pos = pos;
 		this.op = op;
 	}
@@ -22,29 +27,65 @@ public class NodeRelop extends Node {
 	 * @param right the right operand
 	 * @return 1.0 if the comparison is true, 0.0 if false
 	 */
-	public double op(double left, double right) {
-		switch (op) {
-			case "<":  return left < right ? 1.0 : 0.0;
-			case "<=": return left <= right ? 1.0 : 0.0;
-			case ">":  return left > right ? 1.0 : 0.0;
-			case ">=": return left >= right ? 1.0 : 0.0;
-			case "<>": return left != right ? 1.0 : 0.0;
-			case "==": return left == right ? 1.0 : 0.0;
-			default: return 0.0;
-		}
-	}
+	public abstract double op(double left, double right);
+
+	/**
+	 * Generates a JVM comparison that jumps if the operator's result is false.
+	 * NaN operands compare false, except for "<>", as in op().
+	 * @param jit the bytecode generator
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public abstract void jit(Jit jit, Jit.Label no);
+
+	/**
+	 * Lowers the operator into a VM jump taken if its result is false.
+	 * @param vm the instruction stream being built
+	 * @param no the label to jump to if the comparison is false
+	 */
+	public abstract void lower(Vm vm, Vm.Label no);
 
 	/**
 	 * Generates C code for the relational operator.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
 	 */
-	public String code() {
+	public void code(Appendable out) throws IOException {
 		// Convert <> to != for C
 		if (op.equals("<>")) {
-			return "!=";
+			out.append("!=");
+			return;
 		}
-		return op;
+		out.append(op);
 	}
 
-}
+	/**
+	 * Writes the operator, as its position and string.
+	 * @param out the stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writePos(pos);
+		out.writeString(op);
+	}
 
+	/**
+	 * Reads a relational operator written by save().
+	 * @param in the stream to read from
+	 * @return the operator
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeRelop load(AstCache.Input in) throws IOException {
+		int pos = in.readPos();
+		String op = in.readString();
+		switch (op) {
+			case "<": return new NodeLt(pos);
+			case "<=": return new NodeLe(pos);
+			case ">": return new NodeGt(pos);
+			case ">=": return new NodeGe(pos);
+			case "<>": return new NodeNe(pos);
+			case "==": return new NodeEq(pos);
+			default: throw new IOException("bad operator: "+op);
+		}
+	}
+
+}
@@ -2,6 +2,10 @@
  * NodeStmt represents a statement in the parse tree.
  * Statements can be assignments, read, write, if, while, or blocks.
  */
+
+import java.io.*;
+import java.util.*;
+
 public class NodeStmt extends Node {
 
 	private NodeAssn assn;
@@ -59,6 +63,176 @@ public class NodeStmt extends Node {
 		this.block = block;
 	}
 
+	/**
+	 * Constructs a copy of a statement node, wrapping the same statement.
+	 * @param stmt the statement node to copy
+	 */
+	protected NodeStmt(NodeStmt stmt) {
+		this.pos = stmt.pos;
+		this.assn = stmt.assn;
+		this.rd = stmt.rd;
+		this.wr = stmt.wr;
+		this.ifStmt = stmt.ifStmt;
+		this.whileStmt = stmt.whileStmt;
+		this.block = stmt.block;
+	}
+
+	/**
+	 * Sets the position of the statement, and of the statement it wraps,
+	 * which is where a profile (see Profiler) reports it.
+	 * @param pos the position in the source code
+	 * @return this node
+	 */
+	public NodeStmt at(int pos) {
+		this.pos = pos;
+		stmt().pos = pos;
+		return this;
+	}
+
+	/**
+	 * Gets the wrapped statement.
+	 * @return the statement
+	 */
+	private Node stmt() {
+		return assn != null ? assn
+			: rd != null ? rd
+			: wr != null ? wr
+			: ifStmt != null ? ifStmt
+			: whileStmt != null ? whileStmt
+			: block;
+	}
+
+	/**
+	 * Folds the wrapped statement.
+	 * @return this node
+	 */
+	public Node fold() {
+		if (assn != null) assn.fold();
+		if (wr != null) wr.fold();
+		if (ifStmt != null) ifStmt.fold();
+		if (whileStmt != null) whileStmt.fold();
+		if (block != null) block.fold();
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of the wrapped statement.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		if (assn != null) assn.resolve(env);
+		if (rd != null) rd.resolve(env);
+		if (wr != null) wr.resolve(env);
+		if (ifStmt != null) ifStmt.resolve(env);
+		if (whileStmt != null) whileStmt.resolve(env);
+		if (block != null) block.resolve(env);
+	}
+
+	/**
+	 * Adds the effects of the statement.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		if (assn != null) assn.effects(effects);
+		if (rd != null) rd.effects(effects);
+		if (wr != null) wr.effects(effects);
+		if (ifStmt != null) ifStmt.effects(effects);
+		if (whileStmt != null) whileStmt.effects(effects);
+		if (block != null) block.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the wrapped statement that need no check.
+	 * @param definite the variables defined before the statement
+	 */
+	public void definite(Definite definite) {
+		if (assn != null) assn.definite(definite);
+		if (rd != null) rd.definite(definite);
+		if (wr != null) wr.definite(definite);
+		if (ifStmt != null) ifStmt.definite(definite);
+		if (whileStmt != null) whileStmt.definite(definite);
+		if (block != null) block.definite(definite);
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the wrapped statement.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public NodeStmt hoist(Hoist hoist) {
+		if (assn != null) assn = assn.hoist(hoist);
+		if (wr != null) wr.hoist(hoist);
+		if (ifStmt != null) ifStmt.hoist(hoist);
+		if (whileStmt != null) whileStmt.hoist(hoist);
+		if (block != null) block.hoist(hoist);
+		return this;
+	}
+
+	/**
+	 * Propagates constants through the wrapped statement.
+	 * @param constants the variables known before the statement
+	 * @return the statement that replaces this one, or null if it can never run
+	 */
+	public NodeStmt propagate(Constants constants) {
+		if (assn != null) assn.propagate(constants);
+		if (rd != null) rd.propagate(constants);
+		if (ifStmt != null) {
+			Node taken = ifStmt.propagate(constants);
+			if (taken != ifStmt) return (NodeStmt) taken;
+		}
+		if (whileStmt != null && whileStmt.propagate(constants) == null) return null;
+		if (block != null && block.propagate(constants) == null) return null;
+		return this;
+	}
+
+	/**
+	 * Counts the statements that evaluating this one once executes,
+	 * itself included, if it consists only of assignments (see assignments()).
+	 * @return the number of statements
+	 */
+	public int statements() {
+		return block != null ? 1 + block.statements() : 1;
+	}
+
+	/**
+	 * Adds the assignments the statement consists of, in order,
+	 * if it consists only of assignments.
+	 * @param list the list to add them to
+	 * @return false if the statement, or a statement in its block, isn't an assignment
+	 */
+	public boolean assignments(List<NodeAssn> list) {
+		if (assn != null) {
+			list.add(assn);
+			return true;
+		}
+		return block != null && block.assignments(list);
+	}
+
+	/**
+	 * Profiles the wrapped statement, and times this one.
+	 * @param profiler the profiler that keeps the counts
+	 * @return the profiled statement
+	 */
+	public NodeStmt profile(Profiler profiler) {
+		if (ifStmt != null) ifStmt = ifStmt.profile(profiler);
+		if (whileStmt != null) whileStmt = whileStmt.profile(profiler);
+		if (block != null) block.profile(profiler);
+		return new NodeStmtProfiled(this, profiler.site(pos, kind()));
+	}
+
+	/**
+	 * Gets the kind of the wrapped statement, as a profile reports it.
+	 * @return the kind
+	 */
+	private String kind() {
+		return assn != null ? "assignment"
+			: rd != null ? "rd"
+			: wr != null ? "wr"
+			: ifStmt != null ? "if"
+			: whileStmt != null ? "while"
+			: "block";
+	}
+
 	/**
 	 * Evaluates the statement.
 	 * @param env the environment containing variable values
@@ -66,6 +240,7 @@ public class NodeStmt extends Node {
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
+		if (Metrics.STATEMENTS) env.executed(1);
 		if (assn != null) return assn.eval(env);
 		if (rd != null) return rd.eval(env);
 		if (wr != null) return wr.eval(env);
@@ -75,18 +250,92 @@ public class NodeStmt extends Node {
 		throw new EvalException(pos, "empty statement");
 	}
 
+	/**
+	 * Generates JVM bytecode for the wrapped statement.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		if (assn != null) assn.jit(jit);
+		if (rd != null) rd.jit(jit);
+		if (wr != null) wr.jit(jit);
+		if (ifStmt != null) ifStmt.jit(jit);
+		if (whileStmt != null) whileStmt.jit(jit);
+		if (block != null) block.jit(jit);
+	}
+
+	/**
+	 * Lowers the wrapped statement into VM instructions.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		if (assn != null) assn.lower(vm);
+		if (rd != null) rd.lower(vm);
+		if (wr != null) wr.lower(vm);
+		if (ifStmt != null) ifStmt.lower(vm);
+		if (whileStmt != null) whileStmt.lower(vm);
+		if (block != null) block.lower(vm);
+	}
+
 	/**
 	 * Generates C code for the statement.
-	 * @return C code string representation
-	 */
-	public String code() {
-		if (assn != null) return assn.code();
-		if (rd != null) return rd.code();
-		if (wr != null) return wr.code();
-		if (ifStmt != null) return ifStmt.code();
-		if (whileStmt != null) return whileStmt.code();
-		if (block != null) return "{" + block.code() + "}";
-		return "";
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		if (assn != null) assn.code(out);
+		if (rd != null) rd.code(out);
+		if (wr != null) wr.code(out);
+		if (ifStmt != null) ifStmt.code(out);
+		if (whileStmt != null) whileStmt.code(out);
+		if (block != null) {
+			out.append("{");
+			block.code(out);
+			out.append("}");
+		}
+	}
+
+	// the kinds of statement, as saved
+	private static final int ASSN = 0;
+	private static final int RD = 1;
+	private static final int WR = 2;
+	private static final int IF = 3;
+	private static final int WHILE = 4;
+	private static final int BLOCK = 5;
+
+	/**
+	 * Writes the kind of the wrapped statement, and its position, followed by it.
+	 * @param out the stream to write to
+	 * @throws IOException if the statement can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeByte(assn != null ? ASSN
+			: rd != null ? RD
+			: wr != null ? WR
+			: ifStmt != null ? IF
+			: whileStmt != null ? WHILE
+			: BLOCK);
+		out.writePos(pos);
+		stmt().save(out);
+	}
+
+	/**
+	 * Reads a statement written by save().
+	 * @param in the stream to read from
+	 * @return the statement
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeStmt load(AstCache.Input in) throws IOException {
+		int kind = in.readByte();
+		int pos = in.readPos();
+		switch (kind) {
+			case ASSN: return new NodeStmt(NodeAssn.load(in)).at(pos);
+			case RD: return new NodeStmt(NodeRd.load(in)).at(pos);
+			case WR: return new NodeStmt(NodeWr.load(in)).at(pos);
+			case IF: return new NodeStmt(NodeIf.load(in)).at(pos);
+			case WHILE: return new NodeStmt(NodeWhile.load(in)).at(pos);
+			case BLOCK: return new NodeStmt(NodeBlock.load(in)).at(pos);
+			default: throw new IOException("bad statement kind: " + kind);
+		}
 	}
 
 }
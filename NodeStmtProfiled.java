@@ -0,0 +1,46 @@
+/**
+ * NodeStmtProfiled is a statement that counts its evaluations,
+ * and the time they take, in its profile site (see Profiler).
+ * The time is inclusive: it counts the statements this one wraps.
+ */
+
+public class NodeStmtProfiled extends NodeStmt {
+
+	private final Profiler.Site site;
+
+	/**
+	 * Constructs a profiled copy of a statement.
+	 * @param stmt the statement
+	 * @param site where to count its evaluations
+	 */
+	public NodeStmtProfiled(NodeStmt stmt, Profiler.Site site) {
+		super(stmt);
+		this.site = site;
+	}
+
+	/**
+	 * Leaves the statement as it is, since it is already profiled.
+	 * @param profiler the profiler that keeps the counts
+	 * @return this node
+	 */
+	public NodeStmt profile(Profiler profiler) {
+		return this;
+	}
+
+	/**
+	 * Evaluates the statement, counting and timing it.
+	 * @param env the environment containing variable values
+	 * @return the evaluated value as a double
+	 * @throws EvalException if evaluation fails
+	 */
+	public double eval(Environment env) throws EvalException {
+		long start = System.nanoTime();
+		try {
+			return super.eval(env);
+		} finally {
+			site.count++;
+			site.nanos += System.nanoTime() - start;
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * NodeSub represents a subtraction operator in the parse tree.
+ */
+public class NodeSub extends NodeAddop {
+
+	/**
+	 * Constructs a new subtraction operator node.
+	 * @param pos the position in the source code
+	 */
+	public NodeSub(int pos) {
+		super(pos, "-");
+	}
+
+	/**
+	 * Subtracts the second operand from the first.
+	 * @param o1 the first operand
+	 * @param o2 the second operand
+	 * @return the difference
+	 */
+	public double op(double o1, double o2) {
+		return o1-o2;
+	}
+
+	/**
+	 * Generates the JVM instruction for the operator.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		jit.op(Jit.DSUB);
+	}
+
+	/**
+	 * Lowers the operator into its VM instruction.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		vm.op(Vm.SUB);
+	}
+
+}
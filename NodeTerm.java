@@ -1,38 +1,181 @@
 /**
  * NodeTerm represents a term in the parse tree.
- * A term can be a single factor or a factor combined with a term
- * using a multiplication or division operator.
+ * A term is a sequence of factors,
+ * combined left to right by multiplication or division operators.
+ * Like NodeExpr, it keeps them in flat arrays.
  */
+
+import java.io.*;
+import java.util.*;
+
 public class NodeTerm extends Node {
 
-	private NodeFact fact;
-	private NodeMulop mulop;
-	private NodeTerm term;
+	private NodeFact[] facts;
+	private NodeMulop[] mulops; // mulops[i] is between facts[i] and facts[i+1]
 
 	/**
 	 * Constructs a new term node.
-	 * @param fact the factor component
-	 * @param mulop the multiplication/division operator (can be null)
-	 * @param term the term component (can be null)
+	 * @param facts the factors, at least one
+	 * @param mulops the multiplication/division operators, one fewer than facts
+	 */
+	public NodeTerm(NodeFact[] facts, NodeMulop[] mulops) {
+		this.facts=facts;
+		this.mulops=mulops;
+	}
+
+	/**
+	 * Constructs a new term node with a single factor.
+	 * @param fact the factor
+	 */
+	public NodeTerm(NodeFact fact) {
+		this(new NodeFact[] { fact },new NodeMulop[0]);
+	}
+
+	/**
+	 * Gets the lone factor of a term without operators.
+	 * @return the factor, or null if the term has an operator
+	 */
+	public NodeFact fact() {
+		return facts.length==1 ? facts[0] : null;
+	}
+
+	/**
+	 * Gets the number of factors in the term.
+	 * @return the number of factors
+	 */
+	public int size() {
+		return facts.length;
+	}
+
+	/**
+	 * Gets a factor of the term.
+	 * @param i the index of the factor
+	 * @return the factor
+	 */
+	public NodeFact fact(int i) {
+		return facts[i];
+	}
+
+	/**
+	 * Gets the operator between two factors.
+	 * @param i the index of the operator, which follows factor i
+	 * @return the operator
+	 */
+	public NodeMulop mulop(int i) {
+		return mulops[i];
+	}
+
+	/**
+	 * Checks whether a factor is a particular literal.
+	 * Zeros are told apart by sign.
+	 * @param fact the factor, or null
+	 * @param value the literal
+	 * @return true if the factor is that literal
+	 */
+	public static boolean is(NodeFact fact, double value) {
+		return fact instanceof NodeFactNum
+			&& Double.compare(((NodeFactNum)fact).value(),value)==0;
+	}
+
+	/**
+	 * Folds the term in place.
+	 * A constant prefix of the factors becomes a literal,
+	 * and "x*1", "1*x", and "x/1" become "x", which are exact.
+	 * @return this term
+	 */
+	public NodeTerm fold() {
+		List<NodeFact> f=new ArrayList<NodeFact>();
+		List<NodeMulop> m=new ArrayList<NodeMulop>();
+		f.add(facts[0].fold());
+		for (int i=1; i<facts.length; i++) {
+			NodeFact fact=facts[i].fold();
+			NodeMulop mulop=mulops[i-1];
+			NodeFact left=f.size()==1 ? f.get(0) : null;
+			if (left instanceof NodeFactNum && fact instanceof NodeFactNum) {
+				double value=mulop.op(((NodeFactNum)left).value(),((NodeFactNum)fact).value());
+				if (Double.isFinite(value)) {
+					f.set(0,new NodeFactNum(value));
+					continue;
+				}
+			}
+			if (is(fact,1.0))
+				continue;
+			if (mulop instanceof NodeMul && is(left,1.0)) {
+				f.set(0,fact);
+				continue;
+			}
+			m.add(mulop);
+			f.add(fact);
+		}
+		facts=f.toArray(new NodeFact[0]);
+		mulops=m.toArray(new NodeMulop[0]);
+		return this;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of the factors,
+	 * and then the longest invariant prefix of the factors,
+	 * if it has an operator, which is exact, since factors are
+	 * multiplied left to right.
+	 * Otherwise, a prefix "i*k" or "k*i", of an induction variable
+	 * and a literal, is strength-reduced, if it can be, exactly.
+	 * @param hoist the context of the loop around this term, or null
+	 * @return this term
 	 */
-	public NodeTerm(NodeFact fact, NodeMulop mulop, NodeTerm term) {
-		this.fact=fact;
-		this.mulop=mulop;
-		this.term=term;
+	public NodeTerm hoist(Hoist hoist) {
+		if (hoist==null || hoist.discovering())
+			return this;
+		for (int i=0; i<facts.length; i++)
+			facts[i]=facts[i].hoist(hoist);
+		int n=0;
+		while (n<facts.length && hoist.invariant(facts[n]))
+			n++;
+		NodeFact prefix=null;
+		if (n>=2)
+			prefix=hoist.hoist(new NodeExpr(new NodeTerm(Arrays.copyOf(facts,n),Arrays.copyOf(mulops,n-1))));
+		else if (facts.length>=2 && mulops[0] instanceof NodeMul) {
+			n=2;
+			NodeTerm product=new NodeTerm(Arrays.copyOf(facts,2),Arrays.copyOf(mulops,1));
+			if (facts[0] instanceof NodeFactId && facts[1] instanceof NodeFactNum)
+				prefix=hoist.reduce((NodeFactId)facts[0],((NodeFactNum)facts[1]).value(),product);
+			else if (facts[0] instanceof NodeFactNum && facts[1] instanceof NodeFactId)
+				prefix=hoist.reduce((NodeFactId)facts[1],((NodeFactNum)facts[0]).value(),product);
+		}
+		if (prefix!=null) {
+			NodeFact[] f=new NodeFact[facts.length-n+1];
+			f[0]=prefix;
+			System.arraycopy(facts,n,f,1,facts.length-n);
+			facts=f;
+			mulops=Arrays.copyOfRange(mulops,n-1,mulops.length);
+		}
+		return this;
 	}
 
 	/**
-	 * Appends another term to this one.
-	 * Used for building right-associative terms.
-	 * @param term the term to append
+	 * Resolves the variables of the factors.
+	 * @param env the environment that allocates slots
 	 */
-	public void append(NodeTerm term) {
-		if (this.term==null) {
-			this.mulop=term.mulop;
-			this.term=term;
-			term.mulop=null;
-		} else
-			this.term.append(term);
+	public void resolve(Environment env) {
+		for (NodeFact fact: facts)
+			fact.resolve(env);
+	}
+
+	/**
+	 * Adds the variables of the term.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		for (NodeFact fact: facts)
+			fact.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the factors that need no check.
+	 * @param definite the variables defined before the term
+	 */
+	public void definite(Definite definite) {
+		for (NodeFact fact: facts)
+			fact.definite(definite);
 	}
 
 	/**
@@ -42,17 +185,83 @@ public class NodeTerm extends Node {
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
-		return term==null
-			? fact.eval(env)
-			: mulop.op(term.eval(env),fact.eval(env));
+		double value=facts[0].eval(env);
+		for (int i=1; i<facts.length; i++)
+			value=mulops[i-1].op(value,facts[i].eval(env));
+		return value;
+	}
+
+	/**
+	 * Generates JVM bytecode for the term, leaving its value on the stack.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		facts[0].jit(jit);
+		for (int i=1; i<facts.length; i++) {
+			facts[i].jit(jit);
+			mulops[i-1].jit(jit);
+		}
+	}
+
+	/**
+	 * Lowers the term into VM instructions that push its value.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		facts[0].lower(vm);
+		for (int i=1; i<facts.length; i++) {
+			facts[i].lower(vm);
+			mulops[i-1].lower(vm);
+		}
 	}
 
 	/**
 	 * Generates C code for the term.
-	 * @return C code string representation
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		facts[0].code(out);
+		for (int i=1; i<facts.length; i++) {
+			mulops[i-1].code(out);
+			facts[i].code(out);
+		}
+	}
+
+	/**
+	 * Writes the term, as a count followed by its facts and operators.
+	 * @param out the stream to write to
+	 * @throws IOException if a child can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		out.writeInt(facts.length);
+		facts[0].save(out);
+		for (int i=1; i<facts.length; i++) {
+			mulops[i-1].save(out);
+			facts[i].save(out);
+		}
+	}
+
+	/**
+	 * Reads a term written by save().
+	 * @param in the stream to read from
+	 * @return the term
+	 * @throws IOException if the stream is malformed
 	 */
-	public String code() {
-		return (term==null ? "" : term.code()+mulop.code())+fact.code();
+	public static NodeTerm load(AstCache.Input in) throws IOException {
+		int n=in.readInt();
+		if (n<1)
+			throw new IOException("bad term size: "+n);
+		if (n==1)
+			return new NodeTerm(NodeFact.load(in));
+		List<NodeFact> facts=new ArrayList<NodeFact>();
+		List<NodeMulop> mulops=new ArrayList<NodeMulop>();
+		facts.add(NodeFact.load(in));
+		for (int i=1; i<n; i++) {
+			mulops.add(NodeMulop.load(in));
+			facts.add(NodeFact.load(in));
+		}
+		return new NodeTerm(facts.toArray(new NodeFact[0]),mulops.toArray(new NodeMulop[0]));
 	}
 
 }
@@ -2,10 +2,20 @@
  * NodeWhile represents a while statement in the parse tree.
  * It repeatedly executes a statement while a boolean expression is true.
  */
+
+import java.io.*;
+
 public class NodeWhile extends Node {
 
-	private NodeBoolexpr boolexpr;
-	private NodeStmt stmt;
+	protected NodeBoolexpr boolexpr;
+	protected NodeStmt stmt;
+
+	// what the loop computes when it is entered (see Hoist), null until hoisted
+	private NodeFactInvariant[] invariants = null;
+	private NodeFactInduction[] inductions = null;
+
+	// the loop, if its body is only accumulations (see Accumulation)
+	private Accumulation accumulation = null;
 
 	/**
 	 * Constructs a new while node.
@@ -18,29 +28,218 @@ public class NodeWhile extends Node {
 	}
 
 	/**
-	 * Evaluates the while statement.
+	 * Folds the condition and body.
+	 * @return this node
+	 */
+	public Node fold() {
+		boolexpr.fold();
+		stmt.fold();
+		return this;
+	}
+
+	/**
+	 * Resolves the variables of the condition and body.
+	 * @param env the environment that allocates slots
+	 */
+	public void resolve(Environment env) {
+		boolexpr.resolve(env);
+		stmt.resolve(env);
+	}
+
+	/**
+	 * Adds the effects of the condition and the body.
+	 * @param effects the read/write set
+	 */
+	public void effects(Effects effects) {
+		boolexpr.effects(effects);
+		stmt.effects(effects);
+	}
+
+	/**
+	 * Finds the reads of the condition and the body that need no check.
+	 * Each iteration starts with at least the variables defined before the loop,
+	 * and, since the loop may not iterate, it ends with only those.
+	 * @param definite the variables defined before the statement
+	 */
+	public void definite(Definite definite) {
+		boolexpr.definite(definite);
+		stmt.definite(definite.copy());
+	}
+
+	/**
+	 * Propagates constants through the while statement.
+	 * A loop whose condition is constantly false, when it is entered, is pruned.
+	 * Otherwise, the variables it writes are forgotten, in its body, and after it.
+	 * @param constants the variables known before the statement
+	 * @return this node, or null if the loop never iterates
+	 */
+	public Node propagate(Constants constants) {
+		Double condition = constants.value(boolexpr);
+		if (condition != null && condition == 0.0) {
+			return null;
+		}
+		constants.forget(this);
+		NodeStmt body = stmt.propagate(constants.copy());
+		if (body != null) {
+			stmt = body;
+		}
+		return this;
+	}
+
+	/**
+	 * Hoists loop-invariant expressions out of this loop,
+	 * as part of the loop around it, if any,
+	 * and then, the first time, out of its own body.
+	 * Then recognizes a body of accumulations, again each time,
+	 * since a loop around this one may have replaced an assignment.
+	 * @param hoist the context of the loop around this node, or null
+	 * @return this node
+	 */
+	public NodeWhile hoist(Hoist hoist) {
+		if (hoist != null) {
+			boolexpr.hoist(hoist);
+			stmt.hoist(hoist);
+			if (hoist.discovering()) {
+				return this;
+			}
+		}
+		if (invariants == null) {
+			Hoist own = new Hoist(this);
+			stmt.hoist(own);
+			own.rewrite();
+			boolexpr.hoist(own);
+			stmt.hoist(own);
+			invariants = own.invariants();
+			inductions = own.inductions();
+		}
+		accumulation = Accumulation.of(pos, boolexpr, stmt);
+		return this;
+	}
+
+	/**
+	 * Computes the hoisted temporaries and running products,
+	 * as the loop is entered.
+	 * @param env the environment containing variable values
+	 */
+	protected void enter(Environment env) {
+		if (invariants != null) {
+			for (NodeFactInvariant invariant : invariants) {
+				invariant.enter(env);
+			}
+			for (NodeFactInduction induction : inductions) {
+				induction.enter(env);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the hoisted temporaries and running products,
+	 * as the loop is left.
+	 */
+	protected void exit() {
+		if (invariants != null) {
+			for (NodeFactInvariant invariant : invariants) {
+				invariant.exit();
+			}
+			for (NodeFactInduction induction : inductions) {
+				induction.exit();
+			}
+		}
+	}
+
+	/**
+	 * Profiles the body, and counts the loop's iterations.
+	 * @param profiler the profiler that keeps the counts
+	 * @return the profiled while statement
+	 */
+	public NodeWhile profile(Profiler profiler) {
+		stmt = stmt.profile(profiler);
+		return new NodeWhileProfiled(boolexpr, stmt, profiler.site(pos, "while"));
+	}
+
+	/**
+	 * Evaluates the while statement,
+	 * on an array, if its body is only accumulations.
 	 * @param env the environment containing variable values
 	 * @return the value of the last executed statement (or 0.0 if loop never executes)
 	 * @throws EvalException if evaluation fails
 	 */
 	public double eval(Environment env) throws EvalException {
+		if (accumulation != null && accumulation.run(env)) {
+			return accumulation.result();
+		}
 		double result = 0.0;
-		while (boolexpr.eval(env) != 0.0) {
-			result = stmt.eval(env);
+		enter(env);
+		try {
+			while (boolexpr.eval(env) != 0.0) {
+				result = stmt.eval(env);
+			}
+		} finally {
+			exit();
 		}
 		return result;
 	}
 
+	/**
+	 * Generates JVM bytecode for a loop that tests the condition at the top.
+	 * @param jit the bytecode generator
+	 */
+	public void jit(Jit jit) {
+		Jit.Label top = jit.label();
+		Jit.Label end = jit.label();
+		jit.bind(top);
+		boolexpr.jit(jit, end);
+		stmt.jit(jit);
+		jit.jump(top);
+		jit.bind(end);
+	}
+
+	/**
+	 * Lowers the while statement into a VM loop that tests at the top.
+	 * @param vm the instruction stream being built
+	 */
+	public void lower(Vm vm) {
+		Vm.Label top = vm.label();
+		Vm.Label end = vm.label();
+		vm.bind(top);
+		boolexpr.lower(vm, end);
+		stmt.lower(vm);
+		vm.jump(top);
+		vm.bind(end);
+	}
+
 	/**
 	 * Generates C code for the while statement.
-	 * @return C code string representation
-	 */
-	public String code() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("while (").append(boolexpr.code()).append(") {");
-		sb.append(stmt.code());
-		sb.append("}");
-		return sb.toString();
+	 * @param out where to append the code
+	 * @throws IOException if appending fails
+	 */
+	public void code(Appendable out) throws IOException {
+		out.append("while (");
+		boolexpr.code(out);
+		out.append(") {");
+		stmt.code(out);
+		out.append("}");
+	}
+
+	/**
+	 * Writes the while statement.
+	 * @param out the stream to write to
+	 * @throws IOException if a child can't be saved
+	 */
+	public void save(AstCache.Output out) throws IOException {
+		boolexpr.save(out);
+		stmt.save(out);
+	}
+
+	/**
+	 * Reads a while statement written by save().
+	 * @param in the stream to read from
+	 * @return the while statement
+	 * @throws IOException if the stream is malformed
+	 */
+	public static NodeWhile load(AstCache.Input in) throws IOException {
+		NodeBoolexpr boolexpr = NodeBoolexpr.load(in);
+		return new NodeWhile(boolexpr, NodeStmt.load(in));
 	}
 
 }
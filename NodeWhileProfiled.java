@@ -0,0 +1,43 @@
+/**
+ * NodeWhileProfiled is a while statement that counts
+ * its iterations in its profile site (see Profiler).
+ */
+
+public class NodeWhileProfiled extends NodeWhile {
+
+	private final Profiler.Site site;
+
+	/**
+	 * Constructs a profiled while node.
+	 * @param boolexpr the boolean expression to evaluate
+	 * @param stmt the statement to execute while the condition is true
+	 * @param site where to count the iterations
+	 */
+	public NodeWhileProfiled(NodeBoolexpr boolexpr, NodeStmt stmt, Profiler.Site site) {
+		super(boolexpr, stmt);
+		this.site = site;
+	}
+
+	/**
+	 * Evaluates the while statement, counting its iterations.
+	 * @param env the environment containing variable values
+	 * @return the value of the last executed statement (or 0.0 if loop never executes)
+	 * @throws EvalException if evaluation fails
+	 */
+	public double eval(Environment env) throws EvalException {
+		double result = 0.0;
+		long iterations = 0;
+		enter(env);
+		try {
+			while (boolexpr.eval(env) != 0.0) {
+				iterations++;
+				result = stmt.eval(env);
+			}
+		} finally {
+			exit();
+			site.iterations += iterations;
+		}
+		return result;
+	}
+
+}
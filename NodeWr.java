@@ -2,8 +2,14 @@
  * NodeWr represents a write/output statement in the parse tree.
  * It evaluates an expression and outputs its value.
  */
+
+import java.io.*;
+
 public class NodeWr extends Node {
     private NodeExpr expr;
+
+    // Sink that all write operations go through
+    private static OutputSink sink = new OutputSink(System.out);
     
     /**
      * Constructs a new write node.
@@ -13,6 +19,50 @@ public class NodeWr extends Node {
         this.expr = expr;
     }
     
+    /**
+     * Folds the written expression.
+     * @return this node
+     */
+    public Node fold() {
+        expr.fold();
+        return this;
+    }
+
+    /**
+     * Hoists loop-invariant expressions out of the written expression.
+     * @param hoist the context of the loop around this node, or null
+     * @return this node
+     */
+    public Node hoist(Hoist hoist) {
+        expr.hoist(hoist);
+        return this;
+    }
+
+    /**
+     * Resolves the variables of the expression.
+     * @param env the environment that allocates slots
+     */
+    public void resolve(Environment env) {
+        expr.resolve(env);
+    }
+
+    /**
+     * Adds the output, and the expression's variables.
+     * @param effects the read/write set
+     */
+    public void effects(Effects effects) {
+        effects.output();
+        expr.effects(effects);
+    }
+
+    /**
+     * Finds the reads of the expression that need no check.
+     * @param definite the variables defined before the write
+     */
+    public void definite(Definite definite) {
+        expr.definite(definite);
+    }
+    
     /**
      * Evaluates the expression and outputs its value.
      * @param env the environment containing variable values
@@ -21,22 +71,86 @@ public class NodeWr extends Node {
      */
     public double eval(Environment env) throws EvalException {
         double d = expr.eval(env);
-        
-        // Print as integer if it's a whole number
-        if (d == (long)d) {
-            System.out.println((long)d);
-        } else {
-            System.out.println(d);
-        }
-        
+        env.sink().write(d);
         return d;
     }
     
+    /**
+     * Outputs a value to an environment's sink.
+     * The value is printed as an integer if it's a whole number
+     * (see OutputSink).
+     * @param d the value to output
+     * @param env the environment the program runs in
+     */
+    public static void write(double d, Environment env) {
+        env.sink().write(d);
+    }
+
+    /**
+     * Gets the shared sink that values are written to,
+     * unless a program's environment has its own.
+     * @return the sink
+     */
+    public static OutputSink sink() {
+        return sink;
+    }
+
+    /**
+     * Replaces the sink that values are written to,
+     * after flushing the old one.
+     * @param s the new sink
+     */
+    public static void sink(OutputSink s) {
+        sink.flush();
+        sink = s;
+    }
+    
+    /**
+     * Generates JVM bytecode that outputs the expression.
+     * @param jit the bytecode generator
+     */
+    public void jit(Jit jit) {
+        expr.jit(jit);
+        jit.write();
+    }
+    
+    /**
+     * Lowers the write statement into VM instructions.
+     * @param vm the instruction stream being built
+     */
+    public void lower(Vm vm) {
+        expr.lower(vm);
+        vm.write();
+    }
+
     /**
      * Generates C code for the write statement.
-     * @return C code string representation
+     * @param out where to append the code
+     * @throws IOException if appending fails
+     */
+    public void code(Appendable out) throws IOException {
+        out.append("printf(\"%g\\n\", (double)(");
+        expr.code(out);
+        out.append("));");
+    }
+
+    /**
+     * Writes the write statement.
+     * @param out the stream to write to
+     * @throws IOException if the expression can't be saved
+     */
+    public void save(AstCache.Output out) throws IOException {
+        expr.save(out);
+    }
+
+    /**
+     * Reads a write statement written by save().
+     * @param in the stream to read from
+     * @return the write statement
+     * @throws IOException if the stream is malformed
      */
-    public String code() {
-        return "printf(\"%g\\n\", (double)(" + expr.code() + "));";
+    public static NodeWr load(AstCache.Input in) throws IOException {
+        return new NodeWr(NodeExpr.load(in));
     }
+
 }
\ No newline at end of file
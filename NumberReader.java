@@ -0,0 +1,234 @@
+/**
+ * This class reads numbers, for rd statements, from an input stream.
+ * It replaces java.util.Scanner.nextDouble(), which matches each token
+ * with locale-aware regular expressions, and allocates strings for it.
+ * Input is buffered as bytes, and a token is split at whitespace
+ * (as Character.isWhitespace() sees it, like Scanner).
+ * A plain ASCII decimal, with an optional sign, fraction, and exponent,
+ * is converted in place, without allocating.
+ * Any other token (e.g., "1,000" or "NaN") is handed to a java.util.Scanner,
+ * so it is accepted or rejected exactly as before,
+ * with the same exceptions.
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+public class NumberReader {
+
+	// powers of ten that are exact doubles
+	private static final double[] POW10=new double[23];
+
+	static {
+		POW10[0]=1;
+		for (int i=1; i<POW10.length; i++)
+			POW10[i]=POW10[i-1]*10;
+	}
+
+	private final InputStream in;
+	private byte[] buf=new byte[1<<16];
+	private int pos=0;		// index of the next byte in buf
+	private int end=0;		// number of bytes in buf
+	private boolean eof=false;
+	private int values=0;	// numbers read since the last fill (see ReadEvent)
+
+	private byte[] token=new byte[64];
+	private int length=0;			// length of the current token
+	private boolean pending=false;	// whether the current token was rejected
+
+	/**
+	 * Constructs a reader for an input stream.
+	 * @param in the input stream
+	 */
+	public NumberReader(InputStream in) {
+		this.in=in;
+	}
+
+	/**
+	 * Gets the next byte, without consuming it.
+	 * @return the byte, or -1 at the end of input
+	 * @throws IOException if the stream can't be read
+	 */
+	private int peek() throws IOException {
+		while (pos==end) {
+			if (eof)
+				return -1;
+			ReadEvent event=new ReadEvent();
+			event.begin();
+			end=in.read(buf,0,buf.length);
+			pos=0;
+			if (event.shouldCommit()) {
+				event.values=values;
+				event.bytes=Math.max(end,0);
+				event.commit();
+			}
+			values=0;
+			if (end<0) {
+				end=0;
+				eof=true;
+			}
+		}
+		return buf[pos]&0xff;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b==' ' || (b>='\t' && b<='\r') || (b>=0x1c && b<=0x1f);
+	}
+
+	/**
+	 * Reads the next token, unless the last one was rejected.
+	 * @return false at the end of input
+	 * @throws IOException if the stream can't be read
+	 */
+	private boolean token() throws IOException {
+		if (pending)
+			return true;
+		int b;
+		while ((b=peek())>=0 && isWhitespace(b))
+			pos++;
+		if (b<0)
+			return false;
+		length=0;
+		while ((b=peek())>=0 && !isWhitespace(b)) {
+			if (length==token.length)
+				token=Arrays.copyOf(token,length*2);
+			token[length++]=(byte)b;
+			pos++;
+		}
+		pending=true;
+		return true;
+	}
+
+	/**
+	 * Reads the next number.
+	 * A rejected token is not consumed, as with Scanner.
+	 * @return the number
+	 * @throws NoSuchElementException at the end of input
+	 * @throws InputMismatchException if the next token isn't a number
+	 */
+	public double nextDouble() {
+		try {
+			if (!token())
+				throw new NoSuchElementException();
+		} catch (IOException e) {
+			// Scanner treats an unreadable stream as ended
+			throw new NoSuchElementException();
+		}
+		double d=parse();
+		pending=false;
+		values++;
+		return d;
+	}
+
+	/**
+	 * Hands over the input that hasn't been read: a rejected token,
+	 * then what is buffered, then the rest of the stream,
+	 * for another reader (see Native). This reader then reads nothing.
+	 * @return the input
+	 */
+	public InputStream unread() {
+		ByteArrayOutputStream head=new ByteArrayOutputStream();
+		if (pending) {
+			head.write(token,0,length);
+			head.write(' ');
+		}
+		head.write(buf,pos,end-pos);
+		pending=false;
+		pos=end;
+		InputStream rest=eof ? InputStream.nullInputStream() : in;
+		eof=true;
+		return new SequenceInputStream(new ByteArrayInputStream(head.toByteArray()),rest);
+	}
+
+	/**
+	 * Converts the current token.
+	 * A decimal with at most 15 significant digits, and a small exponent,
+	 * is exact as a double, and so is its power of ten,
+	 * so a single multiply or divide rounds it correctly.
+	 * @return the number
+	 */
+	private double parse() {
+		int i=0;
+		boolean negative=false;
+		if (token[0]=='-' || token[0]=='+') {
+			negative=token[0]=='-';
+			i++;
+		}
+		long mantissa=0;
+		int digits=0;		// significant digits in the mantissa
+		int scale=0;		// power of ten to apply to the mantissa
+		int seen=0;			// digits seen, including leading zeros
+		boolean point=false;
+		boolean exact=true;	// whether the mantissa holds every digit
+		for (; i<length; i++) {
+			int c=token[i];
+			if (c>='0' && c<='9') {
+				seen++;
+				if (mantissa==0 && c=='0') {
+					if (point)
+						scale--;
+					continue;
+				}
+				if (++digits>15) {
+					exact=false;
+					continue;
+				}
+				mantissa=mantissa*10+(c-'0');
+				if (point)
+					scale--;
+			} else if (c=='.' && !point)
+				point=true;
+			else
+				break;
+		}
+		if (seen==0)
+			return slow(false);
+		if (i<length) {
+			if (token[i]!='e' && token[i]!='E')
+				return slow(false);
+			i++;
+			boolean minus=false;
+			if (i<length && (token[i]=='-' || token[i]=='+')) {
+				minus=token[i]=='-';
+				i++;
+			}
+			if (i==length)
+				return slow(false);
+			int exp=0;
+			for (; i<length; i++) {
+				int c=token[i];
+				if (c<'0' || c>'9')
+					return slow(false);
+				if (exp<100000)
+					exp=exp*10+(c-'0');
+			}
+			scale+=minus ? -exp : exp;
+		}
+		double d;
+		if (!exact)
+			return slow(true);
+		if (mantissa==0)
+			d=0;
+		else if (scale>=0 && scale<POW10.length)
+			d=mantissa*POW10[scale];
+		else if (scale<0 && -scale<POW10.length)
+			d=mantissa/POW10[-scale];
+		else
+			return slow(true);
+		return negative ? -d : d;
+	}
+
+	/**
+	 * Converts the current token the slow way.
+	 * @param decimal whether the token is known to be a plain decimal
+	 * @return the number
+	 * @throws InputMismatchException if the token isn't a number
+	 */
+	private double slow(boolean decimal) {
+		if (decimal)
+			return Double.parseDouble(new String(token,0,length,StandardCharsets.ISO_8859_1));
+		return new java.util.Scanner(new String(token,0,length,Charset.defaultCharset())).nextDouble();
+	}
+
+}
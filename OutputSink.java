@@ -0,0 +1,167 @@
+/**
+ * This class is a buffered sink for the values written by wr statements.
+ * Each value is formatted straight into a byte buffer,
+ * exactly as System.out.println() would print it
+ * (as a long, if it is a whole number, or else as Double.toString()),
+ * without building a String for it.
+ * The buffer is written to the underlying stream when it fills,
+ * and when flush() is called: at the end of each program,
+ * and before each rd, so a prompt is seen before input is read.
+ * Like a PrintStream, a sink never throws an IOException;
+ * checkError() reports whether one happened.
+ */
+
+import java.io.*;
+
+public class OutputSink {
+
+	// powers of ten that are exact doubles, and longs
+	private static final double[] POW10=new double[10];
+	private static final long[] LPOW10=new long[10];
+
+	private static final byte[] NEWLINE=System.lineSeparator().getBytes();
+
+	static {
+		POW10[0]=1;
+		LPOW10[0]=1;
+		for (int i=1; i<POW10.length; i++) {
+			POW10[i]=POW10[i-1]*10;
+			LPOW10[i]=LPOW10[i-1]*10;
+		}
+	}
+
+	private final OutputStream out;
+	private final byte[] buf;
+	private int len=0;
+	private int values=0;	// values in the buffer (see WriteEvent)
+	private boolean error=false;
+
+	/**
+	 * Constructs a sink with an 8 KB buffer.
+	 * @param out the underlying stream
+	 */
+	public OutputSink(OutputStream out) {
+		this(out,1<<13);
+	}
+
+	/**
+	 * Constructs a sink.
+	 * @param out the underlying stream
+	 * @param size the size of the buffer, at least 64 bytes
+	 */
+	public OutputSink(OutputStream out, int size) {
+		this.out=out;
+		this.buf=new byte[Math.max(size,64)];
+	}
+
+	/**
+	 * Writes a value, followed by a line separator.
+	 * @param d the value
+	 */
+	public void write(double d) {
+		// the longest value, "-9223372036854775808" or "-2.2250738585072014E-308",
+		// fits in 32 bytes, with the line separator
+		if (len+32>buf.length)
+			flush();
+		if (d==(long)d)
+			format((long)d);
+		else if (!decimal(d)) {
+			String s=Double.toString(d);
+			for (int i=0; i<s.length(); i++)
+				buf[len++]=(byte)s.charAt(i);
+		}
+		for (byte b: NEWLINE)
+			buf[len++]=b;
+		values++;
+	}
+
+	/**
+	 * Formats a long into the buffer.
+	 * Digits are generated from a negative value,
+	 * so Long.MIN_VALUE needs no special case.
+	 * @param l the long
+	 */
+	private void format(long l) {
+		if (l<0)
+			buf[len++]='-';
+		else
+			l=-l;
+		int start=len;
+		do {
+			buf[len++]=(byte)('0'-l%10);
+			l/=10;
+		} while (l!=0);
+		for (int i=start, j=len-1; i<j; i++, j--) {
+			byte b=buf[i];
+			buf[i]=buf[j];
+			buf[j]=b;
+		}
+	}
+
+	/**
+	 * Formats a value with a short decimal fraction into the buffer,
+	 * as Double.toString() would.
+	 * Double.toString() prints a value from 10^-3 to 10^7 in plain notation,
+	 * with the fewest fraction digits that still read back as the same value.
+	 * If k such digits make an integer m of d*10^k,
+	 * and m/10^k (a correctly rounded division of exact values)
+	 * is d again, then those k digits are the ones printed,
+	 * as long as m has at most 15 digits,
+	 * since no other decimal that short reads back as d.
+	 * @param d the value, which is not a whole number
+	 * @return false if the value isn't in range, or needs more digits,
+	 *         and nothing was formatted
+	 */
+	private boolean decimal(double d) {
+		double a=Math.abs(d);
+		if (!(a>=1e-3 && a<1e7))
+			return false;
+		for (int k=1; k<POW10.length; k++) {
+			double m=Math.rint(a*POW10[k]);
+			if (m>=1e15)
+				return false;
+			if (m/POW10[k]==a) {
+				if (d<0)
+					buf[len++]='-';
+				long digits=(long)m;
+				format(digits/LPOW10[k]);
+				buf[len++]='.';
+				long frac=digits%LPOW10[k];
+				for (int i=k-1; i>=0; i--)
+					buf[len++]=(byte)('0'+frac/LPOW10[i]%10);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the buffer to the underlying stream, and flushes that.
+	 */
+	public void flush() {
+		WriteEvent event=new WriteEvent();
+		event.begin();
+		try {
+			out.write(buf,0,len);
+			out.flush();
+		} catch (IOException e) {
+			error=true;
+		}
+		if (len>0 && event.shouldCommit()) {
+			event.values=values;
+			event.bytes=len;
+			event.commit();
+		}
+		len=0;
+		values=0;
+	}
+
+	/**
+	 * Checks whether writing to the underlying stream has failed.
+	 * @return true if an IOException happened
+	 */
+	public boolean checkError() {
+		return error;
+	}
+
+}
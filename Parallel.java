@@ -0,0 +1,200 @@
+/**
+ * This class runs programs that share an environment, concurrently,
+ * where that gives the same result as running them one after another.
+ * The programs are parsed concurrently, then resolved in order,
+ * so their variables get the same slots as they would sequentially.
+ * Each program's read/write set (see Effects) is gathered from its tree,
+ * and a program depends on each earlier one it conflicts with:
+ * one that writes a variable it reads or writes,
+ * or reads a variable it writes, or, if both use rd, reads input.
+ * The dependencies form a DAG, which is run on a fork-join pool:
+ * a program starts once every program it depends on has finished.
+ * It starts knowing the constants (see Constants) it would sequentially:
+ * what was known before the programs, except that, for each variable
+ * an earlier program writes, what the last of those left,
+ * which is a program it depends on, so it has already finished.
+ * Each program's wr output, and its error messages, are buffered,
+ * and printed in order, as are the programs' C code,
+ * so the result is the same as if the programs had run sequentially.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Parallel {
+
+	/**
+	 * A program, and what it left behind.
+	 */
+	private static class Program {
+		String prog;		// the program, or the name of its file
+		boolean file;
+		boolean jvm;
+		boolean vm;
+		boolean dis;
+		Node node;			// null if the program couldn't be parsed,
+		                    // or, once it has run, if none of it can run
+		Effects effects=new Effects();
+		Map<Integer,Program> writers=new HashMap<Integer,Program>();	// the last earlier
+		                    // program to write each variable it reads or writes
+		Constants constants;	// known when it finished
+		List<Program> successors=new ArrayList<Program>();
+		AtomicInteger pending=new AtomicInteger();	// unfinished predecessors
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		StringBuilder err=new StringBuilder();
+		boolean done=false;	// whether it ran without error
+	}
+
+	private final List<Program> programs=new ArrayList<Program>();
+	private AstCache cache=null;
+
+	/**
+	 * Adds a program, to be run by finish().
+	 * @param prog the program, or the name of its file
+	 * @param file whether prog is a file name (see Source)
+	 * @param cache the cache of parsed programs, or null
+	 * @param jvm whether to run the program as JVM bytecode (see Jit)
+	 * @param vm whether to run the program on the bytecode VM (see Vm)
+	 * @param dis whether to disassemble the program's VM code
+	 */
+	public void add(String prog, boolean file, AstCache cache,
+	                boolean jvm, boolean vm, boolean dis) {
+		Program p=new Program();
+		p.prog=prog;
+		p.file=file;
+		p.jvm=jvm;
+		p.vm=vm;
+		p.dis=dis;
+		programs.add(p);
+		this.cache=cache;
+	}
+
+	/**
+	 * Parses and folds a program, from the cache if it's there.
+	 * @param p the program
+	 */
+	private void parse(Program p) {
+		try {
+			CharSequence text=p.file ? Source.open(p.prog) : p.prog;
+			p.node=Main.parse(new Parser(),text,cache,p.err);
+		} catch (Exception e) {
+			p.err.append(e).append(System.lineSeparator());
+		}
+	}
+
+	/**
+	 * Runs a program, then starts each successor that has nothing left to wait for.
+	 * @param p the program
+	 * @param env the shared environment
+	 * @param known the variables known to hold constants before the programs
+	 * @param pool the pool to start successors on
+	 * @param finished counted down once the program has finished
+	 */
+	private static void run(Program p, Environment env, Constants known,
+	                        ForkJoinPool pool, CountDownLatch finished) {
+		OutputSink sink=new OutputSink(p.out);
+		Environment view=env.view(sink);
+		p.constants=known.copy();
+		for (Map.Entry<Integer,Program> w: p.writers.entrySet())
+			learn(p.constants,w.getKey(),w.getValue());
+		try {
+			p.node=Main.run(p.node,view,p.constants,p.jvm,p.vm,p.dis,p.err);
+			p.done=true;
+		} catch (Exception e) {
+			p.err.append(e).append(System.lineSeparator());
+		} finally {
+			sink.flush();
+			for (Program s: p.successors)
+				if (s.pending.decrementAndGet()==0)
+					pool.execute(() -> run(s,env,known,pool,finished));
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * Learns what a finished program left in a variable that it writes:
+	 * the constant it was known to hold, if the program ran to completion,
+	 * or else nothing, since the program may have left any value in it.
+	 * @param constants the context that learns it
+	 * @param slot the slot of the variable
+	 * @param writer the program
+	 */
+	private static void learn(Constants constants, int slot, Program writer) {
+		if (writer.done)
+			constants.take(slot,writer.constants);
+		else
+			constants.forget(slot);
+	}
+
+	/**
+	 * Runs the programs, and prints their output and error messages, in order.
+	 * Then generates their C code.
+	 * @param env the shared environment
+	 * @param known the variables known to hold constants before the programs,
+	 *              which are updated to those known after them
+	 * @param code the C code generator
+	 */
+	public void finish(Environment env, Constants known, Code code) {
+		NodeWr.sink().flush();
+		ForkJoinPool pool=ForkJoinPool.commonPool();
+		List<Callable<Object>> parses=new ArrayList<Callable<Object>>();
+		for (Program p: programs)
+			parses.add(Executors.callable(() -> parse(p)));
+		pool.invokeAll(parses);
+		List<Program> runnable=new ArrayList<Program>();
+		for (Program p: programs)
+			if (p.node!=null) {
+				p.node.resolve(env);
+				p.node.effects(p.effects);
+				runnable.add(p);
+			}
+		Map<Integer,Program> writers=new HashMap<Integer,Program>();
+		for (Program p: runnable) {
+			BitSet slots=p.effects.variables();
+			for (int s=slots.nextSetBit(0); s>=0; s=slots.nextSetBit(s+1))
+				if (writers.containsKey(s))
+					p.writers.put(s,writers.get(s));
+			for (int s=slots.nextSetBit(0); s>=0; s=slots.nextSetBit(s+1))
+				if (p.effects.writes(s))
+					writers.put(s,p);
+		}
+		for (int j=0; j<runnable.size(); j++) {
+			Program later=runnable.get(j);
+			for (int i=0; i<j; i++) {
+				Program earlier=runnable.get(i);
+				if (earlier.effects.conflicts(later.effects)) {
+					earlier.successors.add(later);
+					later.pending.incrementAndGet();
+				}
+			}
+		}
+		// find the roots before starting any, since a program that starts
+		// can finish, and start its successors, before the others are checked
+		List<Program> roots=new ArrayList<Program>();
+		for (Program p: runnable)
+			if (p.pending.get()==0)
+				roots.add(p);
+		CountDownLatch finished=new CountDownLatch(runnable.size());
+		for (Program p: roots)
+			pool.execute(() -> run(p,env,known,pool,finished));
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		for (Map.Entry<Integer,Program> w: writers.entrySet())
+			learn(known,w.getKey(),w.getValue());
+		for (Program p: programs) {
+			System.out.write(p.out.toByteArray(),0,p.out.size());
+			System.out.flush();
+			System.err.print(p.err);
+			if (p.done && p.node!=null)
+				code.add(p.node);
+		}
+		programs.clear();
+	}
+
+}
@@ -0,0 +1,22 @@
+/**
+ * This class is a JDK Flight Recorder event for a parse (see Parser).
+ * Its duration is the time to scan and parse the program.
+ */
+
+import jdk.jfr.*;
+
+@Name("translator.Parse")
+@Label("Parse")
+@Category("Translator")
+@Description("A program scanned and parsed")
+public class ParseEvent extends Event {
+
+	@Label("Source Size")
+	@Description("Characters in the program")
+	int size;
+
+	@Label("Tokens")
+	@Description("Tokens scanned, counting the end of input")
+	int tokens;
+
+}
@@ -1,71 +1,153 @@
 /**
  * This class is a recursive-descent parser for a simple arithmetic language.
- * It constructs and maintains a Scanner for the program being parsed.
+ * It scans the program being parsed into a packed token buffer (see Scanner),
+ * a window of tokens at a time,
+ * and looks ahead by reading token kinds out of the buffer,
+ * so matching a token builds no objects.
  * The parser handles expressions with addition, subtraction, multiplication, division,
  * parentheses, unary minus, and assignment statements.
  */
+
+import java.util.*;
+
 public class Parser {
 
 	private Scanner scanner;
+	private int[] tokens = new int[3 * 1024];	// kind, start, and length of each token
+	private int filled;		// number of ints filled in tokens
+	private int at;			// index of the current token's kind in tokens
+	private int scanned;	// number of tokens scanned by the last parse
+
+	// A stack of nodes, shared by the lists being parsed (e.g., the facts of a term),
+	// so that collecting a list allocates nothing but its final array.
+	private Node[] stack = new Node[64];
+	private int sp = 0;
 
 	/**
-	 * Matches the current token with the expected token.
-	 * @param s the expected token string
-	 * @throws SyntaxException if the tokens don't match
+	 * Gets the kind of the current token.
+	 * @return the kind (e.g., Token.ID)
 	 */
-	private void match(String s) throws SyntaxException {
-		scanner.match(new Token(s));
+	private int kind() {
+		return tokens[at];
 	}
 
 	/**
-	 * Gets the current token from the scanner.
+	 * Gets the lexeme of the current token.
+	 * @return the lexeme
+	 */
+	private String lexeme() {
+		return scanner.lexeme(tokens[at + 1], tokens[at + 2]);
+	}
+
+	/**
+	 * Gets the current token, to report it.
 	 * @return the current token
-	 * @throws SyntaxException if no token is available
 	 */
-	private Token curr() throws SyntaxException {
-		return scanner.curr();
+	private Token curr() {
+		int k = kind();
+		return k == Token.ID || k == Token.NUM
+			? new Token(Token.name(k), lexeme())
+			: new Token(Token.name(k));
 	}
 
 	/**
-	 * Gets the current position in the source code.
+	 * Gets the current position in the source code,
+	 * which is the end of the current token.
 	 * @return the current position
 	 */
 	private int pos() {
-		return scanner.pos();
+		return tokens[at + 1] + tokens[at + 2];
+	}
+
+	/**
+	 * Moves to the next token, scanning the next window of tokens
+	 * when the current window is used up.
+	 */
+	private void next() {
+		if (tokens[at] == Token.EOF)
+			return;
+		at += 3;
+		if (at == filled) {
+			filled = scanner.fill(tokens);
+			scanned += filled / 3;
+			at = 0;
+		}
+	}
+
+	/**
+	 * Matches the current token with the expected token.
+	 * @param k the expected token kind
+	 * @throws SyntaxException if the tokens don't match
+	 */
+	private void match(int k) throws SyntaxException {
+		if (kind() != k)
+			throw new SyntaxException(pos(), new Token(Token.name(k)), curr());
+		next();
+	}
+
+	/**
+	 * Pushes a node onto the shared stack.
+	 * @param n the node
+	 */
+	private void push(Node n) {
+		if (sp == stack.length)
+			stack = Arrays.copyOf(stack, sp * 2);
+		stack[sp++] = n;
+	}
+
+	/**
+	 * Pops the nodes above a mark on the shared stack, which alternate
+	 * between operands and operators (e.g., fact, mulop, fact),
+	 * into an operand array and an operator array.
+	 * @param mark the height of the stack before the first operand
+	 * @param operands the operand array, of length (n+1)/2 for n nodes
+	 * @param operators the operator array, of length n/2 for n nodes
+	 */
+	private void pop(int mark, Node[] operands, Node[] operators) {
+		for (int i = mark; i < sp; i++) {
+			if ((i - mark) % 2 == 0)
+				operands[(i - mark) / 2] = stack[i];
+			else
+				operators[(i - mark) / 2] = stack[i];
+			stack[i] = null;
+		}
+		sp = mark;
 	}
 
 	/**
 	 * Parses a multiplication or division operator.
+	 * Each operator gets its own node class, so that evaluating it
+	 * needs no dispatch on the operator string.
 	 * @return the parsed operator node, or null if no operator found
-	 * @throws SyntaxException if parsing fails
 	 */
-	private NodeMulop parseMulop() throws SyntaxException {
-		if (curr().equals(new Token("*"))) {
-			match("*");
-			return new NodeMulop(pos(), "*");
-		}
-		if (curr().equals(new Token("/"))) {
-			match("/");
-			return new NodeMulop(pos(), "/");
+	private NodeMulop parseMulop() {
+		switch (kind()) {
+			case Token.TIMES:
+				next();
+				return new NodeMul(pos());
+			case Token.DIVIDE:
+				next();
+				return new NodeDiv(pos());
+			default:
+				return null;
 		}
-		return null;
 	}
 
 	/**
 	 * Parses an addition or subtraction operator.
 	 * @return the parsed operator node, or null if no operator found
-	 * @throws SyntaxException if parsing fails
 	 */
-	private NodeAddop parseAddop() throws SyntaxException {
-		if (curr().equals(new Token("+"))) {
-			match("+");
-			return new NodeAddop(pos(), "+");
-		}
-		if (curr().equals(new Token("-"))) {
-			match("-");
-			return new NodeAddop(pos(), "-");
+	private NodeAddop parseAddop() {
+		switch (kind()) {
+			case Token.PLUS:
+				next();
+				return new NodeAdd(pos());
+			case Token.MINUS:
+				next();
+				return new NodeSub(pos());
+			default:
+				return null;
 		}
-		return null;
 	}
 
 	/**
@@ -78,30 +160,36 @@ public class Parser {
 	 * @throws SyntaxException if parsing fails
 	 */
 	private NodeFact parseFact() throws SyntaxException {
-		if (curr().equals(new Token("("))) {
-			match("(");
-			NodeExpr expr = parseExpr();
-			match(")");
-			return new NodeFactExpr(expr);
-		}
-		if (curr().equals(new Token("id"))) {
-			Token id = curr();
-			match("id");
-			return new NodeFactId(pos(), id.lex());
-		}
-		if (curr().equals(new Token("-"))) {
-			match("-");
-			NodeFact fact = parseFact();
-			return new NodeFactUnaryMinus(fact);
+		switch (kind()) {
+			case Token.LPAREN: {
+				next();
+				NodeExpr expr = parseExpr();
+				match(Token.RPAREN);
+				return new NodeFactExpr(expr);
+			}
+			case Token.ID: {
+				String id = lexeme();
+				next();
+				return new NodeFactId(pos(), id);
+			}
+			case Token.MINUS: {
+				next();
+				NodeFact fact = parseFact();
+				return new NodeFactUnaryMinus(fact);
+			}
 		}
 		Token num = curr();
-		match("num");
-		return new NodeFactNum(num.lex());
+		match(Token.NUM);
+		try {
+			return new NodeFactNum(num.lex());
+		} catch (NumberFormatException e) {
+			throw new SyntaxException(pos(), new Token("num"), num);
+		}
 	}
 
 	/**
 	 * Parses a term, which consists of factors connected by multiplication/division operators.
-	 * Terms are right-associative.
+	 * Terms are left-associative, and are collected with a loop.
 	 * @return the parsed term node
 	 * @throws SyntaxException if parsing fails
 	 */
@@ -109,15 +197,22 @@ public class Parser {
 		NodeFact fact = parseFact();
 		NodeMulop mulop = parseMulop();
 		if (mulop == null)
-			return new NodeTerm(fact, null, null);
-		NodeTerm term = parseTerm();
-		term.append(new NodeTerm(fact, mulop, null));
-		return term;
+			return new NodeTerm(fact);
+		int mark = sp;
+		push(fact);
+		for (; mulop != null; mulop = parseMulop()) {
+			push(mulop);
+			push(parseFact());
+		}
+		NodeFact[] facts = new NodeFact[(sp - mark + 1) / 2];
+		NodeMulop[] mulops = new NodeMulop[(sp - mark) / 2];
+		pop(mark, facts, mulops);
+		return new NodeTerm(facts, mulops);
 	}
 
 	/**
 	 * Parses an expression, which consists of terms connected by addition/subtraction operators.
-	 * Expressions are right-associative.
+	 * Expressions are left-associative, and are collected with a loop.
 	 * @return the parsed expression node
 	 * @throws SyntaxException if parsing fails
 	 */
@@ -125,10 +220,17 @@ public class Parser {
 		NodeTerm term = parseTerm();
 		NodeAddop addop = parseAddop();
 		if (addop == null)
-			return new NodeExpr(term, null, null);
-		NodeExpr expr = parseExpr();
-		expr.append(new NodeExpr(term, addop, null));
-		return expr;
+			return new NodeExpr(term);
+		int mark = sp;
+		push(term);
+		for (; addop != null; addop = parseAddop()) {
+			push(addop);
+			push(parseTerm());
+		}
+		NodeTerm[] terms = new NodeTerm[(sp - mark + 1) / 2];
+		NodeAddop[] addops = new NodeAddop[(sp - mark) / 2];
+		pop(mark, terms, addops);
+		return new NodeExpr(terms, addops);
 	}
 
 	/**
@@ -137,47 +239,34 @@ public class Parser {
 	 * @throws SyntaxException if parsing fails
 	 */
 	private NodeAssn parseAssn() throws SyntaxException {
-		Token id = curr();
-		match("id");
-		match("=");
+		String id = kind() == Token.ID ? lexeme() : null;
+		match(Token.ID);
+		match(Token.ASSIGN);
 		NodeExpr expr = parseExpr();
-		NodeAssn assn = new NodeAssn(id.lex(), expr);
+		// Fuse the common shape "id = id addop num" (e.g., "x = x + 1")
+		// into a node that evaluates with a single dispatch.
+		if (NodeAssnIdOpNum.fits(expr)) {
+			return new NodeAssnIdOpNum(id, expr);
+		}
+		NodeAssn assn = new NodeAssn(id, expr);
 		return assn;
 	}
 
 	/**
 	 * Parses a relational operator.
 	 * @return the parsed relational operator node, or null if no operator found
-	 * @throws SyntaxException if parsing fails
 	 */
-	private NodeRelop parseRelop() throws SyntaxException {
-		if (curr().equals(new Token("<"))) {
-			match("<");
-			return new NodeRelop(pos(), "<");
-		}
-		if (curr().equals(new Token("<="))) {
-			match("<=");
-			return new NodeRelop(pos(), "<=");
-		}
-		if (curr().equals(new Token(">"))) {
-			match(">");
-			return new NodeRelop(pos(), ">");
-		}
-		if (curr().equals(new Token(">="))) {
-			match(">=");
-			return new NodeRelop(pos(), ">=");
-		}
-		if (curr().equals(new Token("<>"))) {
-			match("<>");
-			return new NodeRelop(pos(), "<>");
-		}
-		if (curr().equals(new Token("=="))) {
-			match("==");
-			return new NodeRelop(pos(), "==");
+	private NodeRelop parseRelop() {
+		switch (kind()) {
+			case Token.LT: next(); return new NodeLt(pos());
+			case Token.LE: next(); return new NodeLe(pos());
+			case Token.GT: next(); return new NodeGt(pos());
+			case Token.GE: next(); return new NodeGe(pos());
+			case Token.NE: next(); return new NodeNe(pos());
+			case Token.EQ: next(); return new NodeEq(pos());
+			default: return null;
 		}
-		return null;
 	}
-
 	/**
 	 * Parses a boolean expression.
 	 * @return the parsed boolean expression node
@@ -190,6 +279,11 @@ public class Parser {
 			throw new SyntaxException(pos(), new Token("relop"), curr());
 		}
 		NodeExpr expr2 = parseExpr();
+		// Fuse the common shape "id relop num" (e.g., "x < 10")
+		// into a node that evaluates with a single dispatch.
+		if (NodeBoolexprIdNum.fits(expr1, expr2)) {
+			return new NodeBoolexprIdNum(expr1, relop, expr2);
+		}
 		return new NodeBoolexpr(expr1, relop, expr2);
 	}
 
@@ -199,18 +293,25 @@ public class Parser {
 	 * @throws SyntaxException if parsing fails
 	 */
 	private NodeBlock parseBlock() throws SyntaxException {
-		NodeStmt stmt = parseStmt();
-		if (curr().equals(new Token(";"))) {
-			match(";");
-			// If next token is "end", don't try to parse another block
+		// Statements are collected with a loop, rather than recursion,
+		// so a long program cannot overflow the stack.
+		int mark = sp;
+		push(parseStmt());
+		while (kind() == Token.SEMI) {
+			next();
+			// If next token is "end", don't try to parse another statement
 			// (this handles the case where a semicolon is followed by "end")
-			if (curr().equals(new Token("end"))) {
-				return new NodeBlock(stmt);
+			if (kind() == Token.END) {
+				break;
 			}
-			NodeBlock block = parseBlock();
-			return new NodeBlock(stmt, block);
+			push(parseStmt());
 		}
-		return new NodeBlock(stmt);
+		NodeBlock block = null;
+		while (sp > mark) {
+			block = new NodeBlock((NodeStmt) stack[--sp], block);
+			stack[sp] = null;
+		}
+		return block;
 	}
 
 	/**
@@ -221,73 +322,118 @@ public class Parser {
 	 * - if-then or if-then-else
 	 * - while-do
 	 * - begin-end block
+	 * The statement's position is the start of its first token.
 	 * @return the parsed statement node
 	 * @throws SyntaxException if parsing fails
 	 */
 	private NodeStmt parseStmt() throws SyntaxException {
-		// Check for 'rd' keyword
-		if (curr().equals(new Token("rd"))) {
-			match("rd");
-			Token id = curr();
-			match("id");
-			return new NodeStmt(new NodeRd(id.lex()));
-		}
-		
-		// Check for 'wr' keyword
-		if (curr().equals(new Token("wr"))) {
-			match("wr");
-			NodeExpr expr = parseExpr();
-			return new NodeStmt(new NodeWr(expr));
-		}
-		
-		// Check for 'if' keyword
-		if (curr().equals(new Token("if"))) {
-			match("if");
-			NodeBoolexpr boolexpr = parseBoolexpr();
-			match("then");
-			NodeStmt stmt1 = parseStmt();
-			if (curr().equals(new Token("else"))) {
-				match("else");
-				NodeStmt stmt2 = parseStmt();
-				return new NodeStmt(new NodeIf(boolexpr, stmt1, stmt2));
+		int start = tokens[at + 1];
+		return parseStmtKind().at(start);
+	}
+
+	/**
+	 * Parses a statement, of the kind its first token starts.
+	 * @return the parsed statement node
+	 * @throws SyntaxException if parsing fails
+	 */
+	private NodeStmt parseStmtKind() throws SyntaxException {
+		switch (kind()) {
+			case Token.RD: {
+				next();
+				String id = kind() == Token.ID ? lexeme() : null;
+				match(Token.ID);
+				return new NodeStmt(new NodeRd(id));
+			}
+			case Token.WR: {
+				next();
+				NodeExpr expr = parseExpr();
+				return new NodeStmt(new NodeWr(expr));
+			}
+			case Token.IF: {
+				next();
+				NodeBoolexpr boolexpr = parseBoolexpr();
+				match(Token.THEN);
+				NodeStmt stmt1 = parseStmt();
+				if (kind() == Token.ELSE) {
+					next();
+					NodeStmt stmt2 = parseStmt();
+					return new NodeStmt(new NodeIf(boolexpr, stmt1, stmt2));
+				}
+				return new NodeStmt(new NodeIf(boolexpr, stmt1));
+			}
+			case Token.WHILE: {
+				next();
+				NodeBoolexpr boolexpr = parseBoolexpr();
+				match(Token.DO);
+				NodeStmt stmt = parseStmt();
+				return new NodeStmt(new NodeWhile(boolexpr, stmt));
+			}
+			case Token.BEGIN: {
+				next();
+				NodeBlock block = parseBlock();
+				match(Token.END);
+				return new NodeStmt(block);
+			}
+			default: {
+				// Otherwise, it's an assignment
+				NodeAssn assn = parseAssn();
+				return new NodeStmt(assn);
 			}
-			return new NodeStmt(new NodeIf(boolexpr, stmt1));
-		}
-		
-		// Check for 'while' keyword
-		if (curr().equals(new Token("while"))) {
-			match("while");
-			NodeBoolexpr boolexpr = parseBoolexpr();
-			match("do");
-			NodeStmt stmt = parseStmt();
-			return new NodeStmt(new NodeWhile(boolexpr, stmt));
-		}
-		
-		// Check for 'begin' keyword
-		if (curr().equals(new Token("begin"))) {
-			match("begin");
-			NodeBlock block = parseBlock();
-			match("end");
-			return new NodeStmt(block);
 		}
-		
-		// Otherwise, it's an assignment
-		NodeAssn assn = parseAssn();
-		return new NodeStmt(assn);
+	}
+
+	/**
+	 * Checks whether the last program parsed had no illegal characters,
+	 * which the scanner skips, with a warning.
+	 * @return true if there were no illegal characters
+	 */
+	public boolean clean() {
+		return scanner.illegal() == 0;
+	}
+
+	/**
+	 * Gets the warnings about the illegal characters of the last program
+	 * parsed, in order, for its diagnostics.
+	 * @return the warnings
+	 */
+	public List<String> warnings() {
+		return scanner.warnings();
 	}
 
 	/**
 	 * Parses a complete program.
-	 * @param program the source code to parse
+	 * @param program the source code to parse (e.g., a String, or a Source)
 	 * @return the parsed block node
 	 * @throws SyntaxException if parsing fails
 	 */
-	public Node parse(String program) throws SyntaxException {
+	public Node parse(CharSequence program) throws SyntaxException {
+		ParseEvent event = new ParseEvent();
+		event.begin();
 		scanner = new Scanner(program);
-		scanner.next();
-		NodeBlock block = parseBlock();
-		match("EOF");
-		return block;
+		filled = scanner.fill(tokens);
+		scanned = filled / 3;
+		at = 0;
+		sp = 0;
+		try {
+			NodeBlock block = parseBlock();
+			match(Token.EOF);
+			return block;
+		} finally {
+			if (event.shouldCommit()) {
+				event.size = program.length();
+				event.tokens = scanned;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of tokens the last program parsed was scanned into,
+	 * up to where parsing stopped, counting the end of input.
+	 * @return the number of tokens
+	 */
+	public int scanned() {
+		return scanned;
 	}
 
 }
@@ -0,0 +1,284 @@
+/**
+ * This class profiles the programs that Main runs, if the Profile
+ * environment variable is set, and writes two reports, when they are done,
+ * named by the variable's value with a suffix: if it is "profile",
+ * profile.txt, to read, and profile.json, for tools.
+ * Each program's statements are replaced, once it is resolved,
+ * by ones that count how often they are evaluated, and the time that takes.
+ * Statements are keyed by program (counting from 1) and position,
+ * so a statement in a loop is one site, however often it runs.
+ * While statements also count their iterations,
+ * and if statements how often their condition is true, and false.
+ * The environment (see ProfilingEnvironment) counts, for each variable,
+ * how often its value is retrieved, and stored.
+ * Only the tree-walking evaluator is profiled: -jvm and -vm code isn't,
+ * nor are -isolate and -parallel programs.
+ * Without the variable, nothing is replaced,
+ * so programs run as fast as they would without a profiler,
+ * even if Metrics are enabled, which count statements without it
+ * (see Environment.executed()).
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class Profiler {
+
+	// how many sites each section of the text report lists
+	private static final int TOP=20;
+
+	// how much of a statement's source a report shows
+	private static final int SOURCE=40;
+
+	/**
+	 * A statement, and what it did.
+	 */
+	public static class Site {
+		final int program;
+		final int pos;
+		final String kind;
+		final String source;
+		long count=0;		// evaluations
+		long nanos=0;		// time in them, inclusive
+		long iterations=0;	// of a while
+		long taken=0;		// evaluations of an if whose condition was true
+		long notTaken=0;	// and false
+
+		Site(int program, int pos, String kind, String source) {
+			this.program=program;
+			this.pos=pos;
+			this.kind=kind;
+			this.source=source;
+		}
+	}
+
+	private final String fn;	// the reports' name, without an extension
+	private final List<Site> sites=new ArrayList<Site>();
+	private Map<Integer,Site> bypos=null;	// the current program's sites
+	private CharSequence text=null;			// and its source
+	private int programs=0;
+
+	/**
+	 * Constructs a Profiler, enabled if the Profile environment variable is set.
+	 */
+	public Profiler() {
+		this(System.getenv("Profile"));
+	}
+
+	/**
+	 * Constructs a Profiler.
+	 * @param fn the reports' name, without ".txt" or ".json", or null for none
+	 */
+	public Profiler(String fn) {
+		this.fn=fn;
+	}
+
+	/**
+	 * Makes the environment for the programs to share,
+	 * which counts variable accesses, if profiling is enabled.
+	 * @return the environment
+	 */
+	public Environment environment() {
+		return fn==null ? new Environment() : new ProfilingEnvironment();
+	}
+
+	/**
+	 * Profiles a resolved program, if profiling is enabled.
+	 * @param node the root of the program
+	 * @param text the program's source
+	 * @return the profiled program, which replaces node
+	 */
+	public Node profile(Node node, CharSequence text) {
+		if (fn==null)
+			return node;
+		programs++;
+		bypos=new HashMap<Integer,Site>();
+		this.text=text;
+		try {
+			return node.profile(this);
+		} finally {
+			bypos=null;
+			this.text=null;
+		}
+	}
+
+	/**
+	 * Gets the site of a statement of the program being profiled,
+	 * making it the first time it is seen.
+	 * @param pos the statement's position
+	 * @param kind the kind of statement
+	 * @return the site
+	 */
+	public Site site(int pos, String kind) {
+		Site site=bypos.get(pos);
+		if (site==null) {
+			site=new Site(programs,pos,kind,source(pos));
+			bypos.put(pos,site);
+			sites.add(site);
+		}
+		return site;
+	}
+
+	/**
+	 * Gets the start of a statement's source, on one line.
+	 * @param pos the statement's position
+	 * @return the source
+	 */
+	private String source(int pos) {
+		StringBuilder s=new StringBuilder();
+		boolean space=false;
+		for (int i=pos; i<text.length() && s.length()<SOURCE; i++) {
+			char c=text.charAt(i);
+			if (Character.isWhitespace(c))
+				space=s.length()>0;
+			else {
+				if (space)
+					s.append(' ');
+				s.append(c);
+				space=false;
+			}
+		}
+		if (s.length()>=SOURCE) {
+			s.setLength(SOURCE);
+			s.append("...");
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Writes the reports, if profiling is enabled.
+	 * @param env the environment the programs shared
+	 */
+	public void close(Environment env) {
+		if (fn==null)
+			return;
+		try {
+			write(fn+".txt",text(env));
+			write(fn+".json",json(env));
+		} catch (IOException e) {
+			System.err.println(e);
+		}
+	}
+
+	private static void write(String name, String report) throws IOException {
+		Files.write(Paths.get(name),report.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Lists the sites, the most time first.
+	 * @param kind the kind of site to list, or null for all
+	 * @return the sites
+	 */
+	private List<Site> hottest(String kind) {
+		List<Site> list=new ArrayList<Site>();
+		for (Site s: sites)
+			if (kind==null || s.kind.equals(kind))
+				list.add(s);
+		list.sort((a,b) -> Long.compare(b.nanos,a.nanos));
+		return list;
+	}
+
+	/**
+	 * Makes the text report: the hottest statements, loops, and branches,
+	 * and the most used variables.
+	 * @param env the environment the programs shared
+	 * @return the report
+	 */
+	private String text(Environment env) {
+		StringBuilder r=new StringBuilder();
+		String nl=System.lineSeparator();
+		r.append("Statements, by time (inclusive):").append(nl);
+		r.append(String.format("%12s %12s %10s  %-10s %s%n","ms","count","prog:pos","kind","source"));
+		for (Site s: top(hottest(null)))
+			r.append(String.format("%12.3f %12d %10s  %-10s %s%n",
+				s.nanos/1e6,s.count,s.program+":"+s.pos,s.kind,s.source));
+		r.append(nl).append("Hot loops:").append(nl);
+		r.append(String.format("%12s %12s %12s %10s  %s%n","ms","iterations","ns/iter","prog:pos","source"));
+		for (Site s: top(hottest("while")))
+			r.append(String.format("%12.3f %12d %12.1f %10s  %s%n",
+				s.nanos/1e6,s.iterations,s.iterations==0 ? 0.0 : (double)s.nanos/s.iterations,
+				s.program+":"+s.pos,s.source));
+		r.append(nl).append("Branches:").append(nl);
+		r.append(String.format("%12s %12s %8s %10s  %s%n","taken","not taken","taken%","prog:pos","source"));
+		for (Site s: top(hottest("if"))) {
+			long n=s.taken+s.notTaken;
+			r.append(String.format("%12d %12d %8.1f %10s  %s%n",
+				s.taken,s.notTaken,n==0 ? 0.0 : 100.0*s.taken/n,s.program+":"+s.pos,s.source));
+		}
+		if (env instanceof ProfilingEnvironment) {
+			ProfilingEnvironment p=(ProfilingEnvironment)env;
+			List<Integer> slots=new ArrayList<Integer>();
+			for (int i=0; i<env.size(); i++)
+				slots.add(i);
+			slots.sort((a,b) -> Long.compare(p.gets(b)+p.puts(b),p.gets(a)+p.puts(a)));
+			r.append(nl).append("Variables:").append(nl);
+			r.append(String.format("%12s %12s  %s%n","gets","puts","name"));
+			for (int i: top(slots))
+				r.append(String.format("%12d %12d  %s%n",p.gets(i),p.puts(i),env.name(i)));
+		}
+		return r.toString();
+	}
+
+	private static <T> List<T> top(List<T> list) {
+		return list.size()>TOP ? list.subList(0,TOP) : list;
+	}
+
+	/**
+	 * Makes the JSON report: every site, by program and position,
+	 * and every variable, in slot order.
+	 * @param env the environment the programs shared
+	 * @return the report
+	 */
+	private String json(Environment env) {
+		List<Site> list=new ArrayList<Site>(sites);
+		list.sort((a,b) -> a.program!=b.program ? Integer.compare(a.program,b.program)
+		                                        : Integer.compare(a.pos,b.pos));
+		StringBuilder r=new StringBuilder();
+		r.append("{\"statements\":[");
+		for (int i=0; i<list.size(); i++) {
+			Site s=list.get(i);
+			r.append(i==0 ? "\n" : ",\n");
+			r.append("{\"program\":").append(s.program)
+				.append(",\"pos\":").append(s.pos)
+				.append(",\"kind\":").append(quote(s.kind))
+				.append(",\"source\":").append(quote(s.source))
+				.append(",\"count\":").append(s.count)
+				.append(",\"nanos\":").append(s.nanos);
+			if (s.kind.equals("while"))
+				r.append(",\"iterations\":").append(s.iterations);
+			if (s.kind.equals("if"))
+				r.append(",\"taken\":").append(s.taken)
+					.append(",\"notTaken\":").append(s.notTaken);
+			r.append("}");
+		}
+		r.append("],\n\"variables\":[");
+		if (env instanceof ProfilingEnvironment) {
+			ProfilingEnvironment p=(ProfilingEnvironment)env;
+			for (int i=0; i<env.size(); i++)
+				r.append(i==0 ? "\n" : ",\n")
+					.append("{\"name\":").append(quote(env.name(i)))
+					.append(",\"gets\":").append(p.gets(i))
+					.append(",\"puts\":").append(p.puts(i))
+					.append("}");
+		}
+		r.append("]}\n");
+		return r.toString();
+	}
+
+	private static String quote(String s) {
+		StringBuilder q=new StringBuilder("\"");
+		for (int i=0; i<s.length(); i++) {
+			char c=s.charAt(i);
+			if (c=='"' || c=='\\')
+				q.append('\\').append(c);
+			else if (c<' ')
+				q.append(String.format("\\u%04x",(int)c));
+			else
+				q.append(c);
+		}
+		return q.append('"').toString();
+	}
+
+}
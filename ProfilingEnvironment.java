@@ -0,0 +1,81 @@
+/**
+ * This class is an environment that counts, for each variable,
+ * how often its value is retrieved, and stored (see Profiler).
+ * Only the tree-walking evaluator goes through get() and put(),
+ * so Jit and Vm code is not counted.
+ */
+
+import java.util.*;
+
+public class ProfilingEnvironment extends Environment {
+
+	private long[] gets = new long[8];
+	private long[] puts = new long[8];
+
+	/**
+	 * Resolves a variable name to its slot, making room to count it.
+	 * @param var the variable name
+	 * @return the slot of the variable
+	 */
+	public int slot(String var) {
+		int slot = super.slot(var);
+		if (slot >= gets.length) {
+			int n = Math.max(slot + 1, gets.length * 2);
+			gets = Arrays.copyOf(gets, n);
+			puts = Arrays.copyOf(puts, n);
+		}
+		return slot;
+	}
+
+	/**
+	 * Stores a value in a resolved slot, counting it.
+	 * @param slot the slot of the variable
+	 * @param val the value to store
+	 * @return the value that was stored
+	 */
+	public double put(int slot, double val) {
+		puts[slot]++;
+		return super.put(slot, val);
+	}
+
+	/**
+	 * Retrieves the value in a resolved slot, counting it.
+	 * @param pos the position in the source code (for error reporting)
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 * @throws EvalException if the variable is not defined
+	 */
+	public double get(int pos, int slot) throws EvalException {
+		gets[slot]++;
+		return super.get(pos, slot);
+	}
+
+	/**
+	 * Retrieves the value in a slot that is certainly defined, counting it.
+	 * @param slot the slot of the variable
+	 * @return the value of the variable
+	 */
+	public double load(int slot) {
+		gets[slot]++;
+		return super.load(slot);
+	}
+
+	/**
+	 * Gets how often a variable's value was retrieved.
+	 * @param slot the slot of the variable
+	 * @return the count
+	 */
+	public long gets(int slot) {
+		return gets[slot];
+	}
+
+	/**
+	 * Gets how often a value was stored in a variable.
+	 * @param slot the slot of the variable
+	 * @return the count
+	 */
+	public long puts(int slot) {
+		return puts[slot];
+	}
+
+}
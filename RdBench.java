@@ -0,0 +1,61 @@
+/**
+ * This class compares the throughput of rd's input paths, in numbers/s:
+ * java.util.Scanner.nextDouble(), as rd used to read, and NumberReader.
+ * It reads a synthetic input of a given size (default 4 million numbers),
+ * several times, and reports the best rounds:
+ *     java RdBench [millions] [rounds]
+ */
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+public class RdBench {
+
+	/**
+	 * Builds a synthetic input, of integers and decimals,
+	 * one per line, like the input of an rd loop.
+	 * @param count the number of numbers
+	 * @return the input
+	 */
+	public static byte[] input(int count) {
+		Random random=new Random(354);
+		StringBuilder sb=new StringBuilder(count*8);
+		for (int i=0; i<count; i++)
+			if (i%2==0)
+				sb.append(random.nextInt(100000)).append('\n');
+			else
+				sb.append(random.nextInt(2000)-1000).append('.')
+					.append(random.nextInt(100)).append('\n');
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	public static void main(String[] args) {
+		int millions=args.length>0 ? Integer.parseInt(args[0]) : 4;
+		int rounds=args.length>1 ? Integer.parseInt(args[1]) : 5;
+		int count=millions*1000000;
+		byte[] input=input(count);
+		double bestScanner=0;
+		double bestReader=0;
+		double scannerSum=0;
+		double readerSum=0;
+		for (int r=1; r<=rounds; r++) {
+			long t=System.nanoTime();
+			java.util.Scanner scanner=new java.util.Scanner(new ByteArrayInputStream(input));
+			scannerSum=0;
+			for (int i=0; i<count; i++)
+				scannerSum+=scanner.nextDouble();
+			bestScanner=Math.max(bestScanner,count/((System.nanoTime()-t)/1e9));
+			t=System.nanoTime();
+			NumberReader reader=new NumberReader(new ByteArrayInputStream(input));
+			readerSum=0;
+			for (int i=0; i<count; i++)
+				readerSum+=reader.nextDouble();
+			bestReader=Math.max(bestReader,count/((System.nanoTime()-t)/1e9));
+		}
+		System.out.printf("Scanner %.2f M/s, NumberReader %.2f M/s, %.1fx, sums %s%n",
+			bestScanner/1e6,bestReader/1e6,bestReader/bestScanner,
+			scannerSum==readerSum ? "match" : "DIFFER");
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * This class is a JDK Flight Recorder event for a batch of rd input
+ * read from the underlying stream (see NumberReader).
+ * Its duration is the time the read took, including any time it blocked.
+ */
+
+import jdk.jfr.*;
+
+@Name("translator.Read")
+@Label("Read")
+@Category("Translator")
+@Description("A batch of rd input read")
+public class ReadEvent extends Event {
+
+	@Label("Values")
+	@Description("Values read from the previous batch")
+	int values;
+
+	@Label("Bytes")
+	@DataAmount
+	int bytes;
+
+}
@@ -2,123 +2,102 @@
  * This class is a lexical analyzer (scanner) for a simple arithmetic language.
  * It tokenizes the input program into tokens such as identifiers, numbers,
  * operators, and keywords.
+ * Characters are classified by static lookup tables,
+ * and a token's lexeme is kept as a (start, length) view of the program,
+ * which is only copied into a String for identifiers and numbers.
+ * The program is any CharSequence (e.g., a String, or a memory-mapped Source),
+ * which is never copied as a whole.
+ * Tokens can be scanned a window at a time into a packed token buffer,
+ * for the parser, by fill().
+ * An illegal character is skipped, with a warning, which is kept
+ * for whoever reports the program's diagnostics (see warnings()),
+ * so it comes out in order with the program's others.
  */
 
 import java.util.*;
 
 public class Scanner {
 
-	private String program;		// source program being interpreted
+	private CharSequence program;	// source program being interpreted
 	private int pos;			// index of next char in program
-	private Token token;		// last/current scanned token
+	private int kind;			// kind of the current token (e.g., Token.ID)
+	private int start;			// start of the current token's lexeme
+	private int length;			// length of the current token's lexeme
+	private Token token;		// current token, built when first asked for
+	private int illegal;		// number of illegal characters skipped
+	private List<String> warnings=new ArrayList<String>();
 
-	// sets of various characters and lexemes
-	private Set<String> whitespace=new HashSet<String>();
-	private Set<String> digits=new HashSet<String>();
-	private Set<String> letters=new HashSet<String>();
-	private Set<String> legits=new HashSet<String>();
-	private Set<String> keywords=new HashSet<String>();
-	private Set<String> operators=new HashSet<String>();
+	// character classes, as bits in a table indexed by character
 
-	// initializers for previous sets
+	private static final int WHITESPACE=1;
+	private static final int DIGIT=2;
+	private static final int LETTER=4;
+	private static final int OPERATOR=8;
 
-	/**
-	 * Fills a set with characters in a range.
-	 * @param s the set to fill
-	 * @param lo the low character (inclusive)
-	 * @param hi the high character (inclusive)
-	 */
-	private void fill(Set<String> s, char lo, char hi) {
-		for (char c=lo; c<=hi; c++)
-			s.add(c+"");
-	}
+	private static final byte[] classes=new byte[128];
 
-	/**
-	 * Initializes the whitespace character set.
-	 * @param s the set to initialize
-	 */
-	private void initWhitespace(Set<String> s) {
-		s.add(" ");
-		s.add("\n");
-		s.add("\t");
-	}
+	// the kinds of single-character operators, indexed by character
+	private static final int[] operators=new int[128];
 
-	/**
-	 * Initializes the digit character set.
-	 * @param s the set to initialize
-	 */
-	private void initDigits(Set<String> s) {
-		fill(s,'0','9');
-	}
-
-	/**
-	 * Initializes the letter character set.
-	 * @param s the set to initialize
-	 */
-	private void initLetters(Set<String> s) {
-		fill(s,'A','Z');
-		fill(s,'a','z');
-	}
+	// the keywords, grouped by their first character, and their kinds
+	private static final String[][] keywords=new String[128][];
+	private static final int[][] keywordKinds=new int[128][];
 
 	/**
-	 * Initializes the legitimate character set (letters and digits).
-	 * @param s the set to initialize
+	 * Sets a class bit for the characters in a range.
+	 * @param bit the class bit
+	 * @param lo the low character (inclusive)
+	 * @param hi the high character (inclusive)
 	 */
-	private void initLegits(Set<String> s) {
-		s.addAll(letters);
-		s.addAll(digits);
+	private static void fill(int bit, char lo, char hi) {
+		for (char c=lo; c<=hi; c++)
+			classes[c]|=bit;
 	}
 
-	/**
-	 * Initializes the operator character set.
-	 * @param s the set to initialize
-	 */
-	private void initOperators(Set<String> s) {
-		s.add("=");
-		s.add("+");
-		s.add("-");
-		s.add("*");
-		s.add("/");
-		s.add("(");
-		s.add(")");
-		s.add(";");
-		s.add("<");
-		s.add(">");
+	static {
+		fill(WHITESPACE,' ',' ');
+		fill(WHITESPACE,'\n','\n');
+		fill(WHITESPACE,'\t','\t');
+		fill(DIGIT,'0','9');
+		fill(LETTER,'A','Z');
+		fill(LETTER,'a','z');
+		for (int k=Token.ASSIGN; k<=Token.GT; k++) {
+			char c=Token.name(k).charAt(0);
+			if (Token.name(k).length()==1) {
+				fill(OPERATOR,c,c);
+				operators[c]=k;
+			}
+		}
+		for (int k=Token.RD; k<=Token.END; k++) {
+			char c=Token.name(k).charAt(0);
+			int n=keywords[c]==null ? 0 : keywords[c].length;
+			keywords[c]=Arrays.copyOf(n==0 ? new String[0] : keywords[c],n+1);
+			keywordKinds[c]=Arrays.copyOf(n==0 ? new int[0] : keywordKinds[c],n+1);
+			keywords[c][n]=Token.name(k);
+			keywordKinds[c][n]=k;
+		}
 	}
 
 	/**
-	 * Initializes the keyword set.
-	 * @param s the set to initialize
+	 * Checks whether a character is in a class.
+	 * @param c the character
+	 * @param bit the class bit
+	 * @return true if the character is in the class
 	 */
-	private void initKeywords(Set<String> s) {
-		s.add("rd");
-		s.add("wr");
-		s.add("if");
-		s.add("then");
-		s.add("else");
-		s.add("while");
-		s.add("do");
-		s.add("begin");
-		s.add("end");
+	private static boolean is(char c, int bit) {
+		return c<128 && (classes[c]&bit)!=0;
 	}
 
 	// constructor:
 	//     - squirrel-away source program
-	//     - initialize sets
 	/**
 	 * Constructs a new scanner for the given program.
 	 * @param program the source code to scan
 	 */
-	public Scanner(String program) {
+	public Scanner(CharSequence program) {
 		this.program=program;
 		pos=0;
-		token=null;
-		initWhitespace(whitespace);
-		initDigits(digits);
-		initLetters(letters);
-		initLegits(legits);
-		initKeywords(keywords);
-		initOperators(operators);
+		kind=-1;
 	}
 
 	// handy string-processing methods
@@ -132,28 +111,11 @@ public class Scanner {
 	}
 
 	/**
-	 * Advances the scanner position past any characters in the given set.
-	 * @param s the set of characters to skip
+	 * Advances the scanner position past any characters in the given class.
+	 * @param bit the class of characters to skip
 	 */
-	private void many(Set<String> s) {
-		while (!done()&&s.contains(program.charAt(pos)+""))
-			pos++;
-	}
-
-	/**
-	 * This method advances the scanner until the current input character
-	 * is just after a sequence of one or more of a particular character.
-	 * Arguments:
-	 *     c = the character to search for
-	 * Members:
-	 *     program = the scanner's input
-	 *     pos = index of current input character
-	 * @param c the character to advance past
-	 */
-	private void past(char c) {
-		while (!done()&&c!=program.charAt(pos))
-			pos++;
-		if (!done()&&c==program.charAt(pos))
+	private void many(int bit) {
+		while (!done()&&is(program.charAt(pos),bit))
 			pos++;
 	}
 
@@ -164,28 +126,47 @@ public class Scanner {
 	 * Handles both decimal integers and floating-point numbers with decimal points.
 	 */
 	private void nextNumber() {
-		int old=pos;
-		many(digits);
+		many(DIGIT);
 		
 		// Check for decimal point
 		if (!done() && program.charAt(pos) == '.') {
 			pos++; // consume the decimal point
-			many(digits); // scan digits after decimal point
+			many(DIGIT); // scan digits after decimal point
 		}
 		
-		token=new Token("num",program.substring(old,pos));
+		kind=Token.NUM;
 	}
 
 	/**
 	 * Scans a keyword or identifier.
 	 * Keywords are reserved words, identifiers are variable names.
+	 * A keyword is found by comparing the lexeme in place,
+	 * so no substring is built for it.
 	 */
 	private void nextKwId() {
-		int old=pos;
-		many(letters);
-		many(legits);
-		String lexeme=program.substring(old,pos);
-		token=new Token((keywords.contains(lexeme) ? lexeme : "id"),lexeme);
+		many(LETTER);
+		many(DIGIT|LETTER);
+		kind=Token.ID;
+		String[] group=keywords[program.charAt(start)];
+		if (group!=null)
+			for (int i=0; i<group.length; i++)
+				if (group[i].length()==pos-start && at(start,group[i])) {
+					kind=keywordKinds[program.charAt(start)][i];
+					break;
+				}
+	}
+
+	/**
+	 * Checks whether a word is in the program at a position.
+	 * @param at the position
+	 * @param word the word
+	 * @return true if the word's characters are in the program at the position
+	 */
+	private boolean at(int at, String word) {
+		for (int i=0; i<word.length(); i++)
+			if (program.charAt(at+i)!=word.charAt(i))
+				return false;
+		return true;
 	}
 
 	/**
@@ -193,27 +174,23 @@ public class Scanner {
 	 * Handles both single-character and two-character operators.
 	 */
 	private void nextOp() {
-		int old=pos;
 		char c = program.charAt(pos);
+		pos++;
+		kind = operators[c];
 		
-		// Check for two-character relational operators
-		if (pos + 1 < program.length()) {
-			char next = program.charAt(pos + 1);
-			String twoChar = "" + c + next;
-			
-			// Check for <=, >=, <>, ==
-			if (twoChar.equals("<=") || twoChar.equals(">=") || 
-			    twoChar.equals("<>") || twoChar.equals("==")) {
-				pos = old + 2;
-				token = new Token(twoChar);
-				return;
+		// Check for two-character relational operators: <=, >=, <>, ==
+		if (!done()) {
+			char next = program.charAt(pos);
+			int two = -1;
+			if (next == '=' && (c == '<' || c == '>' || c == '='))
+				two = c == '<' ? Token.LE : c == '>' ? Token.GE : Token.EQ;
+			else if (c == '<' && next == '>')
+				two = Token.NE;
+			if (two >= 0) {
+				pos++;
+				kind = two;
 			}
 		}
-		
-		// Single character operator
-		pos = old + 1;
-		String lexeme = program.substring(old, pos);
-		token = new Token(lexeme);
 	}
 
 	/**
@@ -222,45 +199,117 @@ public class Scanner {
 	 * @return true if a token was scanned, false if EOF was reached
 	 */
 	public boolean next() {
-		many(whitespace);
-		if (done()) {
-			token=new Token("EOF");
-			return false;
+		token=null;
+		while (true) {
+			many(WHITESPACE);
+			start=pos;
+			if (done()) {
+				kind=Token.EOF;
+				length=0;
+				return false;
+			}
+			char c=program.charAt(pos);
+			if (is(c,DIGIT))
+				nextNumber();
+			else if (is(c,LETTER))
+				nextKwId();
+			else if (is(c,OPERATOR))
+				nextOp();
+			else {
+				warnings.add("illegal character at position "+pos);
+				illegal++;
+				pos++;
+				continue;
+			}
+			length=pos-start;
+			return true;
 		}
-		String c=program.charAt(pos)+"";
-		if (digits.contains(c))
-			nextNumber();
-		else if (letters.contains(c))
-			nextKwId();
-		else if (operators.contains(c))
-			nextOp();
-		else {
-			System.err.println("illegal character at position "+pos);
-			pos++;
-			return next();
+	}
+
+	/**
+	 * Gets the number of illegal characters skipped so far.
+	 * @return the number of illegal characters
+	 */
+	public int illegal() {
+		return illegal;
+	}
+
+	/**
+	 * Gets the warnings about the characters skipped so far, in order.
+	 * @return the warnings
+	 */
+	public List<String> warnings() {
+		return warnings;
+	}
+
+	/**
+	 * Gets the kind of the current token, without building a Token.
+	 * @return the kind (e.g., Token.ID), or -1 before the first call to next()
+	 */
+	public int kind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the start of the current token's lexeme.
+	 * @return the index of its first character in the program
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * Gets the length of the current token's lexeme.
+	 * @return the number of characters in the lexeme
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Scans the next window of tokens into a packed token buffer.
+	 * Each token takes three ints: its kind, and its lexeme's start and length.
+	 * Scanning stops when the buffer is full, or after EOF,
+	 * so memory for tokens stays the same however long the program is.
+	 * @param buf the token buffer, whose length is a multiple of three
+	 * @return the number of ints filled
+	 */
+	public int fill(int[] buf) {
+		int n=0;
+		boolean more=true;
+		while (more && n+3<=buf.length) {
+			more=next();
+			buf[n++]=kind;
+			buf[n++]=start;
+			buf[n++]=length;
 		}
-		return true;
+		return n;
 	}
 
 	/**
-	 * This method scans the next lexeme if the current token is the expected token.
-	 * @param t the expected token
-	 * @throws SyntaxException if the current token doesn't match the expected token
+	 * Copies a lexeme out of the program.
+	 * @param start the start of the lexeme
+	 * @param length the length of the lexeme
+	 * @return the lexeme
 	 */
-	public void match(Token t) throws SyntaxException {
-		if (!t.equals(curr()))
-			throw new SyntaxException(pos,t,curr());
-		next();
+	public String lexeme(int start, int length) {
+		return program.subSequence(start,start+length).toString();
 	}
 
 	/**
 	 * Gets the current token.
+	 * Only identifiers and numbers copy their lexeme into a String;
+	 * other tokens are their own lexemes.
 	 * @return the current token
 	 * @throws SyntaxException if no token is available
 	 */
 	public Token curr() throws SyntaxException {
-		if (token==null)
+		if (kind<0)
 			throw new SyntaxException(pos,new Token("ANY"),new Token("EMPTY"));
+		if (token==null)
+			token=kind==Token.ID || kind==Token.NUM
+				? new Token(Token.name(kind),lexeme(start,length))
+				: new Token(Token.name(kind));
 		return token;
 	}
 
@@ -278,6 +327,8 @@ public class Scanner {
 			Scanner scanner=new Scanner(args[0]);
 			while (scanner.next())
 				System.out.println(scanner.curr());
+			for (String w: scanner.warnings())
+				System.err.println(w);
 		} catch (SyntaxException e) {
 			System.err.println(e);
 		}
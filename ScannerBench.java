@@ -0,0 +1,50 @@
+/**
+ * This class measures the throughput of the Scanner, in MB/s.
+ * It scans a synthetic program of a given size (default 16 MB),
+ * several times, and reports the best and last rounds:
+ *     java ScannerBench [megabytes] [rounds]
+ */
+
+public class ScannerBench {
+
+	/**
+	 * Builds a synthetic program, mixing keywords, identifiers,
+	 * numbers, and operators, in the proportions of a typical loop.
+	 * @param bytes the approximate size of the program
+	 * @return the program
+	 */
+	public static String program(int bytes) {
+		String[] stmts={
+			"i = 0; s = 0;\n",
+			"while i < 1000 do begin s = s + i * 2.5; i = i + 1 end;\n",
+			"if s >= 100 then wr s else wr counter12 - (s / 3);\n",
+			"rd x; y = -x * x + 42;\n",
+			"if x <> y then begin z = x == y; wr z end;\n",
+		};
+		StringBuilder sb=new StringBuilder(bytes+100);
+		for (int i=0; sb.length()<bytes; i++)
+			sb.append(stmts[i%stmts.length]);
+		return sb.toString();
+	}
+
+	public static void main(String[] args) {
+		int mb=args.length>0 ? Integer.parseInt(args[0]) : 16;
+		int rounds=args.length>1 ? Integer.parseInt(args[1]) : 10;
+		String program=program(mb<<20);
+		double best=0;
+		for (int r=1; r<=rounds; r++) {
+			long t=System.nanoTime();
+			Scanner scanner=new Scanner(program);
+			int tokens=0;
+			while (scanner.next())
+				tokens++;
+			double secs=(System.nanoTime()-t)/1e9;
+			double rate=program.length()/secs/(1<<20);
+			best=Math.max(best,rate);
+			if (r==rounds)
+				System.out.printf("%d tokens, last %.1f MB/s, best %.1f MB/s%n",
+					tokens,rate,best);
+		}
+	}
+
+}
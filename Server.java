@@ -0,0 +1,238 @@
+/**
+ * This class is a long-running interpreter, which serves requests
+ * on a Unix domain socket (see Client).
+ * Each request pays for neither starting a JVM, nor loading classes,
+ * and finds the JIT already warmed up by earlier requests.
+ * A request is a command line, as Main takes it,
+ * with programs, "-f" files, and the -jvm, -vm, and -dis options,
+ * followed by the request's standard input.
+ * It runs on its own thread (a virtual thread, if the JVM has them),
+ * with its own environment, which reads rd input from the request,
+ * and streams wr output back, as it is written.
+ * The server's -cache option, if any, applies to every request.
+ *
+ * The protocol is binary, in network byte order.
+ * The client sends the number of arguments, as an int,
+ * then each argument, as an int length and that many bytes of UTF-8,
+ * then its standard input, until it shuts down its side of the socket.
+ * The server sends frames: a tag byte, OUT or ERR, an int length,
+ * and that many bytes of standard output or error,
+ * and finally an EXIT tag, and an int exit status.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+public class Server {
+
+	public static final int OUT=1;
+	public static final int ERR=2;
+	public static final int EXIT=3;
+
+	private final Path path;
+	private final AstCache cache;
+
+	/**
+	 * Constructs a server.
+	 * @param path the socket's path
+	 * @param cache the cache of parsed programs, or null
+	 */
+	public Server(String path, AstCache cache) {
+		this.path=Paths.get(path);
+		this.cache=cache;
+	}
+
+	/**
+	 * Gets the default socket path, in the temporary directory.
+	 * @return the path
+	 */
+	public static String defaultPath() {
+		return Paths.get(System.getProperty("java.io.tmpdir"),"354.sock").toString();
+	}
+
+	/**
+	 * Accepts and runs requests, until the JVM is stopped.
+	 * A socket left behind by a server that died is replaced,
+	 * but not one that a server is still listening on.
+	 * @throws IOException if the socket can't be bound
+	 */
+	public void serve() throws IOException {
+		UnixDomainSocketAddress address=UnixDomainSocketAddress.of(path);
+		if (Files.exists(path)) {
+			try {
+				SocketChannel.open(address).close();
+				throw new IOException("a server is already listening on "+path);
+			} catch (ConnectException e) {
+				Files.delete(path);
+			}
+		}
+		ServerSocketChannel server=ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(address);
+		path.toFile().deleteOnExit();
+		ExecutorService pool=Isolated.virtualThreads();
+		if (pool==null)
+			pool=Executors.newCachedThreadPool();
+		System.err.println("serving on "+path);
+		while (true) {
+			SocketChannel client=server.accept();
+			pool.execute(() -> handle(client));
+		}
+	}
+
+	/**
+	 * Runs a request, and closes its connection.
+	 * If the client goes away, the request runs to the end,
+	 * with its output discarded.
+	 * @param client the connection
+	 */
+	private void handle(SocketChannel client) {
+		try (client) {
+			DataInputStream in=new DataInputStream(new BufferedInputStream(input(client)));
+			String[] args=new String[in.readInt()];
+			for (int i=0; i<args.length; i++) {
+				byte[] arg=new byte[in.readInt()];
+				in.readFully(arg);
+				args[i]=new String(arg,StandardCharsets.UTF_8);
+			}
+			DataOutputStream out=new DataOutputStream(new BufferedOutputStream(output(client)));
+			PrintStream err=new PrintStream(new Frames(out,ERR),true);
+			Environment env=new Environment();
+			env.sink(new OutputSink(new Frames(out,OUT)));
+			env.reader(new NumberReader(in));
+			Metrics.opened(env);
+			try {
+				run(args,env,err);
+			} finally {
+				Metrics.closed(env);
+			}
+			synchronized (out) {
+				out.writeByte(EXIT);
+				out.writeInt(0);
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client went away
+		}
+	}
+
+	/**
+	 * Runs a request's command line, as Main would.
+	 * @param args the command line
+	 * @param env the request's environment
+	 * @param err the request's standard error
+	 */
+	private void run(String[] args, Environment env, PrintStream err) {
+		Parser parser=new Parser();
+		boolean jvm=false;
+		boolean vm=false;
+		boolean dis=false;
+		// known at the end of the programs so far, as in Main
+		Constants known=new Constants();
+		for (int i=0; i<args.length; i++) {
+			String prog=args[i];
+			// the engines are exclusive, so the last one given wins
+			if (prog.equals("-jvm")) {
+				jvm=true;
+				vm=false;
+			} else if (prog.equals("-vm")) {
+				vm=true;
+				jvm=false;
+			}
+			else if (prog.equals("-dis"))
+				dis=true;
+			else if (prog.equals("-f") && i+1==args.length)
+				err.println("missing argument for "+prog);
+			else if (prog.startsWith("-") && !prog.equals("-f"))
+				err.println("unknown option: "+prog);
+			else
+				try {
+					CharSequence text=prog.equals("-f") ? Source.open(args[++i]) : prog;
+					Node node=Main.parse(parser,text,cache,err);
+					node.resolve(env);
+					Constants constants=known.copy();
+					known.forget(node);
+					Main.run(node,env,constants,jvm,vm,dis,err);
+					known=constants;
+				} catch (Exception e) {
+					env.sink().flush();
+					err.println(e);
+				} finally {
+					env.sink().flush();
+				}
+		}
+	}
+
+	/**
+	 * Makes an input stream that reads a socket channel directly.
+	 * Channels.newInputStream() would lock the channel while it blocks,
+	 * so a client couldn't write its input while it waits for output.
+	 * @param ch the channel
+	 * @return the stream
+	 */
+	public static InputStream input(SocketChannel ch) {
+		return new InputStream() {
+			public int read() throws IOException {
+				byte[] b=new byte[1];
+				return read(b,0,1)<0 ? -1 : b[0]&0xff;
+			}
+			public int read(byte[] b, int off, int len) throws IOException {
+				return len==0 ? 0 : ch.read(ByteBuffer.wrap(b,off,len));
+			}
+		};
+	}
+
+	/**
+	 * Makes an output stream that writes a socket channel directly.
+	 * @param ch the channel
+	 * @return the stream
+	 */
+	public static OutputStream output(SocketChannel ch) {
+		return new OutputStream() {
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte)b },0,1);
+			}
+			public void write(byte[] b, int off, int len) throws IOException {
+				ByteBuffer buf=ByteBuffer.wrap(b,off,len);
+				while (buf.hasRemaining())
+					ch.write(buf);
+			}
+		};
+	}
+
+	/**
+	 * This class is a stream that writes frames of one tag,
+	 * each sent as soon as it is written.
+	 */
+	private static class Frames extends OutputStream {
+
+		private final DataOutputStream out;
+		private final int tag;
+
+		Frames(DataOutputStream out, int tag) {
+			this.out=out;
+			this.tag=tag;
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte)b },0,1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len==0)
+				return;
+			synchronized (out) {
+				out.writeByte(tag);
+				out.writeInt(len);
+				out.write(b,off,len);
+				out.flush();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * This class is a program's source text, read from a file
+ * without copying it into a String.
+ * A regular file is memory-mapped, so its pages are read on demand,
+ * and stay out of the Java heap, however large the file is.
+ * Other files (e.g., a pipe) are read into a buffer.
+ * The language is ASCII, so each byte is one character.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+public class Source implements CharSequence {
+
+	private final ByteBuffer bytes;
+
+	/**
+	 * Wraps a buffer of source bytes.
+	 * @param bytes the buffer, from its position to its limit
+	 */
+	public Source(ByteBuffer bytes) {
+		this.bytes=bytes.slice();
+	}
+
+	/**
+	 * Opens a program file.
+	 * @param path the path of the file
+	 * @return the file's source text
+	 * @throws IOException if the file can't be read, or is too large to index
+	 */
+	public static Source open(String path) throws IOException {
+		Path p=Paths.get(path);
+		if (!Files.isRegularFile(p))
+			return new Source(ByteBuffer.wrap(Files.readAllBytes(p)));
+		try (FileChannel ch=FileChannel.open(p,StandardOpenOption.READ)) {
+			long size=ch.size();
+			if (size>Integer.MAX_VALUE)
+				throw new IOException("file too large: "+path);
+			return new Source(ch.map(FileChannel.MapMode.READ_ONLY,0,size));
+		}
+	}
+
+	/**
+	 * Gets the source bytes.
+	 * @return a read-only view of the bytes
+	 */
+	public ByteBuffer bytes() {
+		return bytes.asReadOnlyBuffer();
+	}
+
+	public int length() {
+		return bytes.limit();
+	}
+
+	public char charAt(int index) {
+		return (char)(bytes.get(index)&0xff);
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return new Source(bytes.duplicate().position(start).limit(end));
+	}
+
+	public String toString() {
+		byte[] b=new byte[bytes.limit()];
+		bytes.duplicate().get(b);
+		return new String(b,java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -1,9 +1,48 @@
 // This class models a token, which has two parts:
 // 1) the token itself (e.g., "id" or "+")
 // 2) the token's lexeme (e.g., "foo")
+// The scanner and parser work with token kinds, as int constants,
+// which are packed into a token buffer (see Scanner.tokenize()).
+// Token objects are only built to report them (e.g., in a SyntaxException).
 
 public class Token {
 
+	// token kinds
+	public static final int EOF=0;
+	public static final int ID=1;
+	public static final int NUM=2;
+	public static final int RD=3;
+	public static final int WR=4;
+	public static final int IF=5;
+	public static final int THEN=6;
+	public static final int ELSE=7;
+	public static final int WHILE=8;
+	public static final int DO=9;
+	public static final int BEGIN=10;
+	public static final int END=11;
+	public static final int ASSIGN=12;
+	public static final int PLUS=13;
+	public static final int MINUS=14;
+	public static final int TIMES=15;
+	public static final int DIVIDE=16;
+	public static final int LPAREN=17;
+	public static final int RPAREN=18;
+	public static final int SEMI=19;
+	public static final int LT=20;
+	public static final int LE=21;
+	public static final int GT=22;
+	public static final int GE=23;
+	public static final int NE=24;
+	public static final int EQ=25;
+
+	// the token strings of the kinds, indexed by kind
+	private static final String[] names={
+		"EOF", "id", "num",
+		"rd", "wr", "if", "then", "else", "while", "do", "begin", "end",
+		"=", "+", "-", "*", "/", "(", ")", ";",
+		"<", "<=", ">", ">=", "<>", "==",
+	};
+
 	private String token;
 	private String lexeme;
 
@@ -16,6 +55,8 @@ public class Token {
 		this(token,token);
 	}
 
+	public static String name(int kind) { return names[kind]; }
+
 	public String tok() { return token; }
 
 	public String lex() { return lexeme; }
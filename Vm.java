@@ -0,0 +1,340 @@
+/**
+ * This class is a compact bytecode virtual machine,
+ * an execution engine beside eval() and Jit.
+ * A program is lowered, through each node's lower(),
+ * into a flat instruction stream: an int[] of opcodes and operands,
+ * plus a double[] pool of constants.
+ * The stream is run by a dispatch loop with an operand stack,
+ * so running a program never recurses, however long it is.
+ */
+
+import java.util.*;
+
+public class Vm {
+
+	// opcodes, each followed by its operands
+	public static final int HALT=0;		//
+	public static final int CONST=1;	// constant index
+	public static final int LOAD=2;		// slot, source position
+	public static final int STORE=3;	// slot
+	public static final int READ=4;		// slot, source position
+	public static final int WRITE=5;	//
+	public static final int ADD=6;		//
+	public static final int SUB=7;		//
+	public static final int MUL=8;		//
+	public static final int DIV=9;		//
+	public static final int NEG=10;		//
+	public static final int JMP=11;		// target
+	public static final int JNLT=12;	// target: jump unless left < right
+	public static final int JNLE=13;	// target: jump unless left <= right
+	public static final int JNGT=14;	// target: jump unless left > right
+	public static final int JNGE=15;	// target: jump unless left >= right
+	public static final int JNNE=16;	// target: jump unless left <> right
+	public static final int JNEQ=17;	// target: jump unless left == right
+	public static final int LOADU=18;	// slot, which is certainly defined
+
+	private static final String[] NAMES={
+		"HALT", "CONST", "LOAD", "STORE", "READ", "WRITE",
+		"ADD", "SUB", "MUL", "DIV", "NEG", "JMP",
+		"JNLT", "JNLE", "JNGT", "JNGE", "JNNE", "JNEQ",
+		"LOADU",
+	};
+
+	private static final int[] OPERANDS={
+		0, 1, 2, 1, 2, 0,
+		0, 0, 0, 0, 0, 1,
+		1, 1, 1, 1, 1, 1,
+		1,
+	};
+
+	/**
+	 * A forward or backward branch target.
+	 */
+	public static class Label {
+		private int at=-1;
+		private List<Integer> uses=new ArrayList<Integer>();
+	}
+
+	private int[] code=new int[64];
+	private int len=0;
+	private double[] consts=new double[8];
+	private int nconsts=0;
+	private Map<Long,Integer> constIndex=new HashMap<Long,Integer>();
+	private int depth=0;
+	private int maxDepth=0;
+
+	/**
+	 * Lowers a program into a new instruction stream.
+	 * The program must already be resolved.
+	 * @param node the root of the parsed program
+	 */
+	public Vm(Node node) {
+		node.lower(this);
+		emit(HALT);
+		code=Arrays.copyOf(code,len);
+		consts=Arrays.copyOf(consts,nconsts);
+	}
+
+	// emitters for the nodes
+
+	/**
+	 * Pushes a constant.
+	 * @param d the constant
+	 */
+	public void num(double d) {
+		Long bits=Double.doubleToRawLongBits(d);
+		Integer i=constIndex.get(bits);
+		if (i==null) {
+			if (nconsts==consts.length)
+				consts=Arrays.copyOf(consts,nconsts*2);
+			i=nconsts;
+			consts[nconsts++]=d;
+			constIndex.put(bits,i);
+		}
+		emit(CONST,i);
+		push(1);
+	}
+
+	/**
+	 * Pushes the value of a variable.
+	 * @param pos the position of the variable in the source code
+	 * @param slot the slot of the variable
+	 */
+	public void load(int pos, int slot) {
+		emit(LOAD,slot,pos);
+		push(1);
+	}
+
+	/**
+	 * Pushes the value of a variable that is certainly defined,
+	 * without checking it.
+	 * @param slot the slot of the variable
+	 */
+	public void load(int slot) {
+		emit(LOADU,slot);
+		push(1);
+	}
+
+	/**
+	 * Pops a value and stores it into a variable.
+	 * @param slot the slot of the variable
+	 */
+	public void store(int slot) {
+		emit(STORE,slot);
+		push(-1);
+	}
+
+	/**
+	 * Reads a value from standard input into a variable.
+	 * @param pos the position of the statement in the source code
+	 * @param slot the slot of the variable
+	 */
+	public void read(int pos, int slot) {
+		emit(READ,slot,pos);
+	}
+
+	/**
+	 * Pops a value and writes it to the environment's sink.
+	 */
+	public void write() {
+		emit(WRITE);
+		push(-1);
+	}
+
+	/**
+	 * Emits an arithmetic operator, which pops one or two values,
+	 * and pushes the result.
+	 * @param op the opcode (e.g., ADD)
+	 */
+	public void op(int op) {
+		emit(op);
+		if (op!=NEG)
+			push(-1);
+	}
+
+	/**
+	 * Pops two values, and jumps unless they satisfy a comparison.
+	 * @param op the opcode (e.g., JNLT)
+	 * @param target the label to jump to
+	 */
+	public void jumpUnless(int op, Label target) {
+		emit(op,target.at);
+		if (target.at<0)
+			target.uses.add(len-1);
+		push(-2);
+	}
+
+	/**
+	 * Jumps unconditionally to a label.
+	 * @param target the label to jump to
+	 */
+	public void jump(Label target) {
+		emit(JMP,target.at);
+		if (target.at<0)
+			target.uses.add(len-1);
+	}
+
+	/**
+	 * Creates a new, unbound label.
+	 * @return the label
+	 */
+	public Label label() {
+		return new Label();
+	}
+
+	/**
+	 * Binds a label to the next instruction,
+	 * and patches the earlier jumps to it.
+	 * @param l the label
+	 */
+	public void bind(Label l) {
+		l.at=len;
+		for (int use: l.uses)
+			code[use]=len;
+		l.uses.clear();
+	}
+
+	private void emit(int... ints) {
+		while (len+ints.length>code.length)
+			code=Arrays.copyOf(code,code.length*2);
+		for (int i: ints)
+			code[len++]=i;
+	}
+
+	private void push(int n) {
+		depth+=n;
+		maxDepth=Math.max(maxDepth,depth);
+	}
+
+	/**
+	 * Runs the instruction stream against an environment.
+	 * @param env the environment containing variable values
+	 * @throws EvalException if evaluation fails
+	 */
+	public void run(Environment env) throws EvalException {
+		int[] code=this.code;
+		double[] consts=this.consts;
+		double[] vars=env.values();
+		boolean[] defined=env.defined();
+		OutputSink sink=env.sink();
+		double[] stack=new double[maxDepth+1];
+		int sp=0;
+		int pc=0;
+		double r;
+		while (true)
+			switch (code[pc++]) {
+				case HALT:
+					return;
+				case CONST:
+					stack[sp++]=consts[code[pc++]];
+					break;
+				case LOAD: {
+					int slot=code[pc++];
+					int pos=code[pc++];
+					stack[sp++]=defined[slot] ? vars[slot] : env.get(pos,slot);
+					break;
+				}
+				case LOADU:
+					stack[sp++]=vars[code[pc++]];
+					break;
+				case STORE: {
+					int slot=code[pc++];
+					vars[slot]=stack[--sp];
+					defined[slot]=true;
+					break;
+				}
+				case READ: {
+					int slot=code[pc++];
+					int pos=code[pc++];
+					vars[slot]=NodeRd.read(pos,env);
+					defined[slot]=true;
+					break;
+				}
+				case WRITE:
+					sink.write(stack[--sp]);
+					break;
+				case ADD:
+					r=stack[--sp];
+					stack[sp-1]+=r;
+					break;
+				case SUB:
+					r=stack[--sp];
+					stack[sp-1]-=r;
+					break;
+				case MUL:
+					r=stack[--sp];
+					stack[sp-1]*=r;
+					break;
+				case DIV:
+					r=stack[--sp];
+					stack[sp-1]/=r;
+					break;
+				case NEG:
+					stack[sp-1]=-stack[sp-1];
+					break;
+				case JMP:
+					pc=code[pc];
+					break;
+				case JNLT:
+					sp-=2;
+					pc=stack[sp]<stack[sp+1] ? pc+1 : code[pc];
+					break;
+				case JNLE:
+					sp-=2;
+					pc=stack[sp]<=stack[sp+1] ? pc+1 : code[pc];
+					break;
+				case JNGT:
+					sp-=2;
+					pc=stack[sp]>stack[sp+1] ? pc+1 : code[pc];
+					break;
+				case JNGE:
+					sp-=2;
+					pc=stack[sp]>=stack[sp+1] ? pc+1 : code[pc];
+					break;
+				case JNNE:
+					sp-=2;
+					pc=stack[sp]!=stack[sp+1] ? pc+1 : code[pc];
+					break;
+				case JNEQ:
+					sp-=2;
+					pc=stack[sp]==stack[sp+1] ? pc+1 : code[pc];
+					break;
+				default:
+					throw new EvalException(0,"bogus opcode: "+code[pc-1]);
+			}
+	}
+
+	/**
+	 * Disassembles the instruction stream, one instruction per line.
+	 * @param env the environment, for variable names
+	 * @return the disassembly
+	 */
+	public String disassemble(Environment env) {
+		StringBuilder sb=new StringBuilder();
+		for (int pc=0; pc<len; ) {
+			int op=code[pc];
+			sb.append(String.format("%6d  %-6s",pc,NAMES[op]));
+			switch (op) {
+				case CONST:
+					sb.append(" ").append(consts[code[pc+1]]);
+					break;
+				case LOAD:
+				case READ:
+					sb.append(" ").append(env.name(code[pc+1]))
+						.append("  ; pos=").append(code[pc+2]);
+					break;
+				case LOADU:
+				case STORE:
+					sb.append(" ").append(env.name(code[pc+1]));
+					break;
+				default:
+					if (OPERANDS[op]==1)
+						sb.append(" ").append(code[pc+1]);
+			}
+			sb.append("\n");
+			pc+=1+OPERANDS[op];
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * This class is a JDK Flight Recorder event for a batch of wr output
+ * written to the underlying stream (see OutputSink.flush()).
+ * Its duration is the time the write took.
+ */
+
+import jdk.jfr.*;
+
+@Name("translator.Write")
+@Label("Write")
+@Category("Translator")
+@Description("A batch of wr output written")
+public class WriteEvent extends Event {
+
+	@Label("Values")
+	@Description("Values written since the last batch")
+	int values;
+
+	@Label("Bytes")
+	@DataAmount
+	int bytes;
+
+}
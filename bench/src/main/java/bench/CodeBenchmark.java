@@ -0,0 +1,39 @@
+/**
+ * This class measures C code generation, with Node.code(),
+ * on straight-line programs of growing size.
+ * The code is appended to a StringBuilder that is reused,
+ * so the generator, rather than the output, is measured.
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CodeBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int stmts;
+
+	private Object node;
+	private final StringBuilder out=new StringBuilder();
+
+	@Setup
+	public void setup() throws Throwable {
+		node=Interp.compile(Programs.statements(stmts),Interp.environment());
+	}
+
+	@Benchmark
+	public int code() throws Throwable {
+		out.setLength(0);
+		Interp.code(node,out);
+		return out.length();
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ * This class measures contention on a shared environment:
+ * threads storing and loading variables through Environment.put() and get(),
+ * as the tree-walking evaluator does,
+ * in a plain Environment and in a ConcurrentEnvironment.
+ * Each thread either has its own variable, in adjacent slots,
+ * which share cache lines, or all threads share one variable.
+ * Run it with more threads to see how each scales, e.g., -t 8.
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@Threads(4)
+public class EnvironmentBenchmark {
+
+	/**
+	 * The environment, shared by every thread.
+	 */
+	@State(Scope.Benchmark)
+	public static class Shared {
+
+		@Param({ "plain", "concurrent" })
+		public String kind;
+
+		Object env;
+
+		@Setup
+		public void setup() throws Throwable {
+			env=kind.equals("plain") ? Interp.environment() : Interp.concurrentEnvironment();
+			for (int i=0; i<64; i++)
+				Interp.put(env,Interp.slot(env,"v"+i),i);
+		}
+
+	}
+
+	/**
+	 * The slot each thread uses, when they don't share one.
+	 */
+	@State(Scope.Thread)
+	public static class Own {
+
+		private static int next=0;
+
+		int slot;
+
+		@Setup
+		public void setup() {
+			synchronized (Own.class) {
+				slot=next++%64;
+			}
+		}
+
+	}
+
+	@Benchmark
+	public double ownSlot(Shared s, Own o) throws Throwable {
+		int slot=o.slot;
+		return Interp.put(s.env,slot,Interp.get(s.env,0,slot)+1);
+	}
+
+	@Benchmark
+	public double sharedSlot(Shared s) throws Throwable {
+		return Interp.put(s.env,0,Interp.get(s.env,0,0)+1);
+	}
+
+	@Benchmark
+	public double readOnly(Shared s, Own o) throws Throwable {
+		return Interp.get(s.env,0,o.slot);
+	}
+
+}
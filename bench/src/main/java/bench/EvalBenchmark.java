@@ -0,0 +1,87 @@
+/**
+ * This class measures the tree-walking evaluator, on loop-heavy programs:
+ * repeated factorials, nested loops, and long expressions.
+ * Each program is parsed, folded, and resolved once, in setup,
+ * so only Node.eval() is measured.
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class EvalBenchmark {
+
+	/**
+	 * A resolved program, and the environment it runs in.
+	 */
+	@State(Scope.Thread)
+	public static abstract class Program {
+
+		Object env;
+		Object node;
+
+		protected void compile(String program) throws Throwable {
+			env=Interp.environment();
+			node=Interp.compile(program,env);
+		}
+
+	}
+
+	public static class Factorial extends Program {
+
+		@Param({ "10", "1000", "100000" })
+		public int iterations;
+
+		@Setup
+		public void setup() throws Throwable {
+			compile(Programs.factorial(iterations));
+		}
+
+	}
+
+	public static class Nested extends Program {
+
+		@Param({ "10", "100", "1000" })
+		public int n;
+
+		@Setup
+		public void setup() throws Throwable {
+			compile(Programs.nested(n));
+		}
+
+	}
+
+	public static class Expression extends Program {
+
+		@Param({ "10", "100", "1000" })
+		public int terms;
+
+		@Setup
+		public void setup() throws Throwable {
+			compile(Programs.expression(terms));
+		}
+
+	}
+
+	@Benchmark
+	public double factorial(Factorial p) throws Throwable {
+		return Interp.eval(p.node,p.env);
+	}
+
+	@Benchmark
+	public double nested(Nested p) throws Throwable {
+		return Interp.eval(p.node,p.env);
+	}
+
+	@Benchmark
+	public double expression(Expression p) throws Throwable {
+		return Interp.eval(p.node,p.env);
+	}
+
+}
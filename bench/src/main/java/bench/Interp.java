@@ -0,0 +1,180 @@
+/**
+ * This class gives the benchmarks access to the interpreter.
+ * JMH needs benchmarks in a named package, and a class in a named package
+ * can't name the interpreter's classes, which are in the default package,
+ * so it calls them through method handles.
+ * The handles are static finals, and typed with Object rather than,
+ * e.g., Node, so invokeExact() is inlined by the JIT,
+ * and costs the same as a direct call.
+ */
+
+package bench;
+
+import java.io.*;
+import java.lang.invoke.*;
+
+public final class Interp {
+
+	private static final MethodHandle SCANNER;
+	private static final MethodHandle NEXT;
+	private static final MethodHandle FILL;
+	private static final MethodHandle PARSER;
+	private static final MethodHandle PARSE;
+	private static final MethodHandle FOLD;
+	private static final MethodHandle ENVIRONMENT;
+	private static final MethodHandle CONCURRENT_ENVIRONMENT;
+	private static final MethodHandle SLOT;
+	private static final MethodHandle PUT;
+	private static final MethodHandle GET;
+	private static final MethodHandle RESOLVE;
+	private static final MethodHandle EVAL;
+	private static final MethodHandle CODE;
+	private static final MethodHandle SINK;
+	private static final MethodHandle SET_SINK;
+	private static final MethodHandle READER;
+	private static final MethodHandle SET_READER;
+
+	static {
+		try {
+			MethodHandles.Lookup l=MethodHandles.publicLookup();
+			Class<?> scanner=Class.forName("Scanner");
+			Class<?> parser=Class.forName("Parser");
+			Class<?> node=Class.forName("Node");
+			Class<?> env=Class.forName("Environment");
+			Class<?> sink=Class.forName("OutputSink");
+			Class<?> reader=Class.forName("NumberReader");
+			SCANNER=l.findConstructor(scanner,MethodType.methodType(void.class,CharSequence.class))
+				.asType(MethodType.methodType(Object.class,CharSequence.class));
+			NEXT=generic(l.findVirtual(scanner,"next",MethodType.methodType(boolean.class)));
+			FILL=generic(l.findVirtual(scanner,"fill",MethodType.methodType(int.class,int[].class)));
+			PARSER=generic(l.findConstructor(parser,MethodType.methodType(void.class)));
+			PARSE=l.findVirtual(parser,"parse",MethodType.methodType(node,CharSequence.class))
+				.asType(MethodType.methodType(Object.class,Object.class,CharSequence.class));
+			FOLD=generic(l.findVirtual(node,"fold",MethodType.methodType(node)));
+			ENVIRONMENT=generic(l.findConstructor(env,MethodType.methodType(void.class)));
+			CONCURRENT_ENVIRONMENT=generic(l.findConstructor(Class.forName("ConcurrentEnvironment"),
+				MethodType.methodType(void.class)));
+			SLOT=generic(l.findVirtual(env,"slot",MethodType.methodType(int.class,String.class)));
+			PUT=generic(l.findVirtual(env,"put",MethodType.methodType(double.class,int.class,double.class)));
+			GET=generic(l.findVirtual(env,"get",MethodType.methodType(double.class,int.class,int.class)));
+			RESOLVE=generic(l.findVirtual(node,"resolve",MethodType.methodType(void.class,env)));
+			EVAL=generic(l.findVirtual(node,"eval",MethodType.methodType(double.class,env)));
+			CODE=l.findVirtual(node,"code",MethodType.methodType(void.class,Appendable.class))
+				.asType(MethodType.methodType(void.class,Object.class,Appendable.class));
+			SINK=l.findConstructor(sink,MethodType.methodType(void.class,OutputStream.class))
+				.asType(MethodType.methodType(Object.class,OutputStream.class));
+			SET_SINK=generic(l.findStatic(Class.forName("NodeWr"),"sink",MethodType.methodType(void.class,sink)));
+			READER=l.findConstructor(reader,MethodType.methodType(void.class,InputStream.class))
+				.asType(MethodType.methodType(Object.class,InputStream.class));
+			SET_READER=generic(l.findStatic(Class.forName("NodeRd"),"reader",MethodType.methodType(void.class,reader)));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Interp() {}
+
+	/**
+	 * Retypes a handle, so every interpreter class it takes or returns is an Object.
+	 * @param h the handle
+	 * @return the retyped handle
+	 */
+	private static MethodHandle generic(MethodHandle h) {
+		MethodType t=h.type();
+		for (int i=0; i<t.parameterCount(); i++)
+			if (interpreter(t.parameterType(i)))
+				t=t.changeParameterType(i,Object.class);
+		if (interpreter(t.returnType()))
+			t=t.changeReturnType(Object.class);
+		return h.asType(t);
+	}
+
+	private static boolean interpreter(Class<?> c) {
+		return !c.isPrimitive() && c.getPackageName().isEmpty();
+	}
+
+	public static Object scanner(CharSequence program) throws Throwable {
+		return (Object)SCANNER.invokeExact(program);
+	}
+
+	public static boolean next(Object scanner) throws Throwable {
+		return (boolean)NEXT.invokeExact(scanner);
+	}
+
+	public static int fill(Object scanner, int[] buf) throws Throwable {
+		return (int)FILL.invokeExact(scanner,buf);
+	}
+
+	public static Object parser() throws Throwable {
+		return (Object)PARSER.invokeExact();
+	}
+
+	public static Object parse(Object parser, CharSequence program) throws Throwable {
+		return (Object)PARSE.invokeExact(parser,program);
+	}
+
+	public static Object fold(Object node) throws Throwable {
+		return (Object)FOLD.invokeExact(node);
+	}
+
+	public static Object environment() throws Throwable {
+		return (Object)ENVIRONMENT.invokeExact();
+	}
+
+	public static Object concurrentEnvironment() throws Throwable {
+		return (Object)CONCURRENT_ENVIRONMENT.invokeExact();
+	}
+
+	public static int slot(Object env, String var) throws Throwable {
+		return (int)SLOT.invokeExact(env,var);
+	}
+
+	public static double put(Object env, int slot, double val) throws Throwable {
+		return (double)PUT.invokeExact(env,slot,val);
+	}
+
+	public static double get(Object env, int pos, int slot) throws Throwable {
+		return (double)GET.invokeExact(env,pos,slot);
+	}
+
+	public static void resolve(Object node, Object env) throws Throwable {
+		RESOLVE.invokeExact(node,env);
+	}
+
+	public static double eval(Object node, Object env) throws Throwable {
+		return (double)EVAL.invokeExact(node,env);
+	}
+
+	public static void code(Object node, Appendable out) throws Throwable {
+		CODE.invokeExact(node,out);
+	}
+
+	public static Object sink(OutputStream out) throws Throwable {
+		return (Object)SINK.invokeExact(out);
+	}
+
+	public static void sink(Object sink) throws Throwable {
+		SET_SINK.invokeExact(sink);
+	}
+
+	public static Object reader(InputStream in) throws Throwable {
+		return (Object)READER.invokeExact(in);
+	}
+
+	public static void reader(Object reader) throws Throwable {
+		SET_READER.invokeExact(reader);
+	}
+
+	/**
+	 * Parses, folds, and resolves a program, as Main does.
+	 * @param program the program
+	 * @param env the environment to resolve it in
+	 * @return the program's root node
+	 */
+	public static Object compile(CharSequence program, Object env) throws Throwable {
+		Object node=fold(parse(parser(),program));
+		resolve(node,env);
+		return node;
+	}
+
+}
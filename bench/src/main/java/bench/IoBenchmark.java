@@ -0,0 +1,52 @@
+/**
+ * This class measures rd and wr, through the evaluator:
+ * a loop that reads numbers from an in-memory input (see NumberReader),
+ * and a loop that writes numbers to a sink (see OutputSink)
+ * that discards them, so the console doesn't dominate.
+ */
+
+package bench;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class IoBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int count;
+
+	private byte[] input;
+	private Object env;
+	private Object reads;
+	private Object writes;
+	private Object sink;
+
+	@Setup
+	public void setup() throws Throwable {
+		input=Programs.input(count);
+		env=Interp.environment();
+		reads=Interp.compile(Programs.reads(count),env);
+		writes=Interp.compile(Programs.writes(count),env);
+		sink=Interp.sink(OutputStream.nullOutputStream());
+		Interp.sink(sink);
+	}
+
+	@Benchmark
+	public double rd() throws Throwable {
+		Interp.reader(Interp.reader(new ByteArrayInputStream(input)));
+		return Interp.eval(reads,env);
+	}
+
+	@Benchmark
+	public double wr() throws Throwable {
+		return Interp.eval(writes,env);
+	}
+
+}
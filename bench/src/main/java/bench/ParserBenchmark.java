@@ -0,0 +1,40 @@
+/**
+ * This class measures the Parser, on straight-line programs
+ * from a few statements to a million, to show how parsing scales,
+ * both alone and with folding, as Main does before running a program.
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int stmts;
+
+	private String program;
+
+	@Setup
+	public void setup() {
+		program=Programs.statements(stmts);
+	}
+
+	@Benchmark
+	public Object parse() throws Throwable {
+		return Interp.parse(Interp.parser(),program);
+	}
+
+	@Benchmark
+	public Object parseFold() throws Throwable {
+		return Interp.fold(Interp.parse(Interp.parser(),program));
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ * This class generates synthetic programs, and inputs, of a given size,
+ * so the benchmarks can be run at a range of sizes,
+ * to show how each phase scales.
+ * Programs are deterministic: the same size always makes the same program.
+ * It can also print a program, to try it with Main:
+ *     java -cp bench/target/benchmarks.jar bench.Programs kind size
+ */
+
+package bench;
+
+import java.nio.charset.*;
+import java.util.*;
+
+public final class Programs {
+
+	private Programs() {}
+
+	/**
+	 * Generates a straight-line program, mixing every kind of statement,
+	 * with the keywords, identifiers, numbers, and operators
+	 * in the proportions of typical code.
+	 * Its loops run once at most, so it is cheap to evaluate.
+	 * @param stmts the number of statements
+	 * @return the program
+	 */
+	public static String statements(int stmts) {
+		String[] templates={
+			"i%d = %d",
+			"s%d = s%d + i%d * 2.5 - (x / 3)",
+			"if s%d >= 100 then wr s%d else wr counter - s%d",
+			"while i%d < 1 do begin i%d = i%d + 1; wr -i%d end",
+			"y = -x * x + %d",
+			"if x <> y then begin z = x * %d; wr z end",
+		};
+		StringBuilder sb=new StringBuilder(stmts*24);
+		sb.append("x = 1; counter = 0");
+		for (int i=0; i<stmts; i++) {
+			int v=i%100;
+			String t=templates[i%templates.length];
+			sb.append(";\n").append(t.replace("%d",Integer.toString(v)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates a program that computes 20! again and again.
+	 * @param iterations the number of times
+	 * @return the program
+	 */
+	public static String factorial(int iterations) {
+		return "k = 0; while k < "+iterations+" do begin"
+			+" n = 20; f = 1;"
+			+" while n > 1 do begin f = f * n; n = n - 1 end;"
+			+" k = k + 1 end";
+	}
+
+	/**
+	 * Generates a program of two nested loops.
+	 * @param n the number of iterations of each loop
+	 * @return the program
+	 */
+	public static String nested(int n) {
+		return "s = 0; i = 0; while i < "+n+" do begin"
+			+" j = 0; while j < "+n+" do begin s = s + i * j; j = j + 1 end;"
+			+" i = i + 1 end";
+	}
+
+	/**
+	 * Generates a program that evaluates one long expression, of variables,
+	 * so it can't be folded, a thousand times.
+	 * @param terms the number of terms in the expression
+	 * @return the program
+	 */
+	public static String expression(int terms) {
+		String[] ops={ " + ", " * ", " - ", " / " };
+		StringBuilder sb=new StringBuilder("a = 1.5; b = 2; c = 0.5; k = 0;"
+			+" while k < 1000 do begin e = a");
+		for (int i=1; i<terms; i++)
+			sb.append(ops[i%ops.length]).append("abc".charAt(i%3));
+		return sb.append("; k = k + 1 end").toString();
+	}
+
+	/**
+	 * Generates a program that writes numbers, whole and fractional.
+	 * @param count the number of numbers
+	 * @return the program
+	 */
+	public static String writes(int count) {
+		return "i = 0; while i < "+count+" do begin wr i; wr i / 8; i = i + 1 end";
+	}
+
+	/**
+	 * Generates a program that reads numbers, and sums them.
+	 * @param count the number of numbers
+	 * @return the program
+	 */
+	public static String reads(int count) {
+		return "s = 0; i = 0; while i < "+count+" do begin rd x; s = s + x; i = i + 1 end";
+	}
+
+	/**
+	 * Generates the input of reads(): integers and decimals, one per line.
+	 * @param count the number of numbers
+	 * @return the input
+	 */
+	public static byte[] input(int count) {
+		Random random=new Random(354);
+		StringBuilder sb=new StringBuilder(count*8);
+		for (int i=0; i<count; i++)
+			if (i%2==0)
+				sb.append(random.nextInt(100000)).append('\n');
+			else
+				sb.append(random.nextInt(2000)-1000).append('.')
+					.append(random.nextInt(100)).append('\n');
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Generates a program by kind.
+	 * @param kind statements, factorial, nested, expression, writes, or reads
+	 * @param size the program's size, as its generator takes it
+	 * @return the program
+	 */
+	public static String program(String kind, int size) {
+		switch (kind) {
+			case "statements": return statements(size);
+			case "factorial": return factorial(size);
+			case "nested": return nested(size);
+			case "expression": return expression(size);
+			case "writes": return writes(size);
+			case "reads": return reads(size);
+		}
+		throw new IllegalArgumentException("unknown kind: "+kind);
+	}
+
+	public static void main(String[] args) {
+		if (args.length!=2) {
+			System.err.println("usage: bench.Programs kind size");
+			System.exit(1);
+		}
+		System.out.println(program(args[0],Integer.parseInt(args[1])));
+	}
+
+}
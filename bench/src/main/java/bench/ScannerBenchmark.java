@@ -0,0 +1,51 @@
+/**
+ * This class measures the Scanner's throughput, in tokens,
+ * on straight-line programs of growing size,
+ * both token by token, with next(), and a window at a time,
+ * with fill(), as the Parser reads them.
+ */
+
+package bench;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ScannerBenchmark {
+
+	@Param({ "100", "10000", "1000000" })
+	public int stmts;
+
+	private String program;
+	private final int[] window=new int[3*1024];
+
+	@Setup
+	public void setup() {
+		program=Programs.statements(stmts);
+	}
+
+	@Benchmark
+	public int next() throws Throwable {
+		Object scanner=Interp.scanner(program);
+		int tokens=0;
+		while (Interp.next(scanner))
+			tokens++;
+		return tokens;
+	}
+
+	@Benchmark
+	public int fill() throws Throwable {
+		Object scanner=Interp.scanner(program);
+		int ints=0;
+		int n;
+		while ((n=Interp.fill(scanner,window))==window.length)
+			ints+=n;
+		return ints+n;
+	}
+
+}